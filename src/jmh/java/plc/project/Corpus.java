@@ -0,0 +1,117 @@
+package plc.project;
+
+import java.util.Random;
+
+/**
+ * Generates synthetic programs for the benchmarks. Each shape repeats lines
+ * dominated by one kind of token, so a change to how that kind is lexed or
+ * parsed shows up clearly. Corpora are generated from a fixed seed, so every
+ * run measures the same input.
+ */
+public enum Corpus {
+
+    IDENTIFIER {
+        @Override
+        void line(StringBuilder builder, Random random) {
+            builder.append("    ").append(identifier(random)).append(" = ").append(identifier(random))
+                    .append('.').append(identifier(random)).append('(').append(identifier(random))
+                    .append(", ").append(identifier(random)).append(");\n");
+        }
+    },
+    NUMBER {
+        @Override
+        void line(StringBuilder builder, Random random) {
+            builder.append("    x = ").append(random.nextInt(1_000_000))
+                    .append(" + ").append(-1 - random.nextInt(999)).append('.').append(random.nextInt(1000))
+                    .append(" * ").append(random.nextLong() & Long.MAX_VALUE)
+                    .append(" - 1.").append(random.nextInt(100_000)).append(";\n");
+        }
+    },
+    STRING {
+        private final String[] pieces = {"text", " ", "\\n", "\\t", "\\\\", "\\'", "more words", "\\b"};
+
+        @Override
+        void line(StringBuilder builder, Random random) {
+            builder.append("    print(\"");
+            for (int i = 0; i < 8; i++) {
+                builder.append(pieces[random.nextInt(pieces.length)]);
+            }
+            builder.append("\", '").append(random.nextBoolean() ? "c" : "\\n").append("');\n");
+        }
+    },
+    OPERATOR {
+        @Override
+        void line(StringBuilder builder, Random random) {
+            builder.append("    a = (b < c && d != e) || (f == g && h > i) || (j * k ^ l / m - n);\n");
+        }
+    },
+
+    /**
+     * The statements and expressions of {@code ParserModifiedTests}, in a
+     * random order, so every construct those tests parse is measured. Its
+     * commented out {@code FOR elem IN list} test is replaced by the counted
+     * {@code FOR} the parser now has.
+     */
+    MIXED {
+        private final String[] lines = {
+                "LET name: Type;",
+                "LET name = expr;",
+                "name();",
+                "name = value;",
+                "IF expr DO stmt; END",
+                "IF expr DO stmt1; ELSE stmt2; END",
+                "FOR (i = 0; i < 10; i = i + 1) stmt; END",
+                "WHILE expr DO stmt; END",
+                "RETURN expr;",
+                "x = TRUE;",
+                "x = 1;",
+                "x = 2.0;",
+                "x = 'c';",
+                "x = \"string\";",
+                "x = \"Hello,\\nWorld!\";",
+                "x = (expr);",
+                "x = (expr1 + expr2);",
+                "x = expr1 && expr2;",
+                "x = expr1 == expr2;",
+                "x = expr1 + expr2;",
+                "x = expr1 * expr2;",
+                "x = obj.field;",
+                "x = name(expr1, expr2, expr3);",
+                "x = obj.method();",
+                "WHILE first != 10 DO print(first); first = first + 1; END",
+        };
+
+        @Override
+        void line(StringBuilder builder, Random random) {
+            builder.append("    ").append(lines[random.nextInt(lines.length)]).append('\n');
+        }
+    };
+
+    private static final long SEED = 0x5EED;
+
+    abstract void line(StringBuilder builder, Random random);
+
+    /**
+     * Generates a program of at least the given number of characters, made of
+     * lines of this shape inside a method so the result also parses.
+     */
+    public String generate(int size) {
+        Random random = new Random(SEED);
+        StringBuilder builder = new StringBuilder(size + 128);
+        builder.append("DEF main() DO\n");
+        while (builder.length() < size) {
+            line(builder, random);
+        }
+        return builder.append("END\n").toString();
+    }
+
+    private static String identifier(Random random) {
+        StringBuilder builder = new StringBuilder();
+        builder.append((char) ('a' + random.nextInt(26)));
+        for (int i = random.nextInt(12); i > 0; i--) {
+            builder.append((char) ('a' + random.nextInt(26)));
+        }
+        return builder.append('_').append(random.nextInt(100)).toString();
+    }
+
+}
@@ -0,0 +1,146 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures lexing throughput for each {@link Corpus} shape at sizes from 1 KB
+ * to 100 MB. The {@code tokens} counter reports tokens per second, and the GC
+ * profiler (enabled by the {@code jmh} Gradle task) reports bytes allocated
+ * per operation as {@code gc.alloc.rate.norm}; dividing that by the number of
+ * tokens printed during setup gives bytes per token. {@link
+ * Lexer#lexParallel} is measured on pools of 1 to 32 threads.
+ *
+ * {@link #lexRegex} measures the regex lexer {@link Lexer} replaced, which is
+ * too slow for 100 MB and so is only run on the smaller sizes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms8g", "-Xmx8g"})
+public class LexerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Input {
+
+        @Param({"1024", "1048576", "104857600"})
+        public int size;
+
+        @Param({"IDENTIFIER", "NUMBER", "STRING", "OPERATOR", "MIXED"})
+        public Corpus corpus;
+
+        private String input;
+        private int tokens;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            input = corpus.generate(size);
+            tokens = new Lexer(input).lex().size();
+            System.out.println(corpus + " " + input.length() + " chars, " + tokens + " tokens");
+        }
+
+    }
+
+    @State(Scope.Benchmark)
+    public static class RegexInput {
+
+        @Param({"1024", "1048576"})
+        public int size;
+
+        @Param({"IDENTIFIER", "NUMBER", "STRING", "OPERATOR", "MIXED"})
+        public Corpus corpus;
+
+        private String input;
+        private int tokens;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            input = corpus.generate(size);
+            tokens = new RegexLexer(input).lex().size();
+            System.out.println(corpus + " " + input.length() + " chars, " + tokens + " tokens");
+        }
+
+    }
+
+    /**
+     * Counts the tokens lexed by each benchmark, which JMH reports as a rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tokens = 0;
+        }
+
+    }
+
+    /**
+     * A pool with a fixed number of threads for {@link Lexer#lexParallel},
+     * which is only useful up to the number of cores of the machine.
+     */
+    @State(Scope.Benchmark)
+    public static class Pool {
+
+        @Param({"1", "4", "16", "32"})
+        public int threads;
+
+        private ForkJoinPool pool;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            pool = new ForkJoinPool(threads);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.shutdown();
+        }
+
+    }
+
+    @Benchmark
+    public List<Token> lex(Input input, Counters counters) {
+        counters.tokens += input.tokens;
+        return new Lexer(input.input).lex();
+    }
+
+    @Benchmark
+    public TokenBuffer lexBuffer(Input input, Counters counters) {
+        counters.tokens += input.tokens;
+        return new Lexer(input.input).lexBuffer();
+    }
+
+    @Benchmark
+    public List<Token> lexParallel(Input input, Pool pool, Counters counters) {
+        counters.tokens += input.tokens;
+        return Lexer.lexParallel(input.input, pool.pool);
+    }
+
+    @Benchmark
+    public List<Token> lexRegex(RegexInput input, Counters counters) {
+        counters.tokens += input.tokens;
+        return new RegexLexer(input.input).lex();
+    }
+
+}
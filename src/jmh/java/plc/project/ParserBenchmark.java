@@ -0,0 +1,63 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing throughput for each {@link Corpus} shape from tokens which
+ * are lexed once during setup, so only the parser is measured. As in {@link
+ * LexerBenchmark}, the {@code tokens} counter reports tokens per second, and
+ * its inverse is the cost of parsing each token.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms8g", "-Xmx8g"})
+public class ParserBenchmark {
+
+    @Param({"1024", "1048576"})
+    public int size;
+
+    @Param({"IDENTIFIER", "NUMBER", "STRING", "OPERATOR", "MIXED"})
+    public Corpus corpus;
+
+    private List<Token> list;
+    private TokenBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String input = corpus.generate(size);
+        list = new Lexer(input).lex();
+        buffer = new Lexer(input).lexBuffer();
+        System.out.println(corpus + " " + input.length() + " chars, " + list.size() + " tokens");
+    }
+
+    @Benchmark
+    public Ast.Source parseList(LexerBenchmark.Counters counters) {
+        counters.tokens += list.size();
+        return new Parser(list).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source parseBuffer(LexerBenchmark.Counters counters) {
+        counters.tokens += buffer.size();
+        return new Parser(buffer).parseSource();
+    }
+
+}
@@ -0,0 +1,236 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Parser#parseSource()}, {@link Parser#parseStatement()}, and
+ * {@link Parser#parseExpression()} on each {@link Shape}, from tokens which
+ * are lexed once during setup. The {@code nodes} counter reports AST nodes
+ * per second, whose inverse is the time to parse each node, and dividing the
+ * GC profiler's {@code gc.alloc.rate.norm} by the nodes printed during setup
+ * gives bytes allocated per node.
+ *
+ * Nesting thousands of levels deep needs a larger stack than the default,
+ * so the fork sets one.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms8g", "-Xmx8g", "-Xss64m"})
+public class ParserShapeBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Sources {
+
+        @Param({"16", "4096"})
+        public int size;
+
+        @Param({"NESTING", "CHAIN", "METHODS", "BLOCKS"})
+        public Shape shape;
+
+        private List<Token> tokens;
+        private int nodes;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            tokens = new Lexer(shape.source(size)).lex();
+            nodes = new NodeCounter().visit(new Parser(tokens).parseSource());
+            System.out.println(shape + " source: " + tokens.size() + " tokens, " + nodes + " nodes");
+        }
+
+    }
+
+    @State(Scope.Benchmark)
+    public static class Statements {
+
+        @Param({"16", "4096"})
+        public int size;
+
+        @Param({"NESTING", "CHAIN", "METHODS", "BLOCKS"})
+        public Shape shape;
+
+        private List<Token> tokens;
+        private int nodes;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            tokens = new Lexer(shape.statement(size)).lex();
+            nodes = new NodeCounter().visit(new Parser(tokens).parseStatement());
+            System.out.println(shape + " statement: " + tokens.size() + " tokens, " + nodes + " nodes");
+        }
+
+    }
+
+    @State(Scope.Benchmark)
+    public static class Expressions {
+
+        @Param({"16", "4096"})
+        public int size;
+
+        @Param({"NESTING", "CHAIN", "METHODS", "BLOCKS"})
+        public Shape shape;
+
+        private List<Token> tokens;
+        private int nodes;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            tokens = new Lexer(shape.expression(size)).lex();
+            nodes = new NodeCounter().visit(new Parser(tokens).parseExpression());
+            System.out.println(shape + " expression: " + tokens.size() + " tokens, " + nodes + " nodes");
+        }
+
+    }
+
+    /**
+     * Counts the nodes parsed by each benchmark, which JMH reports as a rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            nodes = 0;
+        }
+
+    }
+
+    @Benchmark
+    public Ast.Source parseSource(Sources input, Counters counters) {
+        counters.nodes += input.nodes;
+        return new Parser(input.tokens).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Statement parseStatement(Statements input, Counters counters) {
+        counters.nodes += input.nodes;
+        return new Parser(input.tokens).parseStatement();
+    }
+
+    @Benchmark
+    public Ast.Expression parseExpression(Expressions input, Counters counters) {
+        counters.nodes += input.nodes;
+        return new Parser(input.tokens).parseExpression();
+    }
+
+    /**
+     * Counts the nodes in a tree, including the root.
+     */
+    private static final class NodeCounter implements Ast.Visitor<Integer> {
+
+        private int visit(List<? extends Ast> asts) {
+            int count = 0;
+            for (Ast ast : asts) {
+                count += visit(ast);
+            }
+            return count;
+        }
+
+        private int visit(Optional<? extends Ast> ast) {
+            return ast.isPresent() ? visit(ast.get()) : 0;
+        }
+
+        @Override
+        public Integer visit(Ast.Source ast) {
+            return 1 + visit(ast.getFields()) + visit(ast.getMethods());
+        }
+
+        @Override
+        public Integer visit(Ast.Field ast) {
+            return 1 + visit(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Method ast) {
+            return 1 + visit(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Expression ast) {
+            return 1 + visit(ast.getExpression());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Declaration ast) {
+            return 1 + visit(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Assignment ast) {
+            return 1 + visit(ast.getReceiver()) + visit(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.If ast) {
+            return 1 + visit(ast.getCondition()) + visit(ast.getThenStatements()) + visit(ast.getElseStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.For ast) {
+            return 1 + visit(Optional.ofNullable(ast.getInitialization())) + visit(ast.getCondition())
+                    + visit(Optional.ofNullable(ast.getIncrement())) + visit(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.While ast) {
+            return 1 + visit(ast.getCondition()) + visit(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Return ast) {
+            return 1 + visit(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Error ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Literal ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Group ast) {
+            return 1 + visit(ast.getExpression());
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Binary ast) {
+            return 1 + visit(ast.getLeft()) + visit(ast.getRight());
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Access ast) {
+            return 1 + visit(ast.getReceiver());
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Function ast) {
+            return 1 + visit(ast.getReceiver()) + visit(ast.getArguments());
+        }
+
+    }
+
+}
@@ -0,0 +1,164 @@
+package plc.project;
+
+/**
+ * Generates programs which stress one structural feature of the parser, as
+ * {@link Corpus} does for kinds of tokens. The size is the number of times
+ * the feature repeats: levels of nesting, operands in a chain, methods, or
+ * statements in each block. Each shape can be generated as a source, a
+ * statement, or an expression, which repeat the feature in the nearest form
+ * each allows.
+ */
+public enum Shape {
+
+    /**
+     * Blocks nested in blocks, cycling through {@code IF}, {@code WHILE},
+     * and {@code FOR}, and groups nested in function calls.
+     */
+    NESTING {
+        @Override
+        public String statement(int size) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < size; i++) {
+                switch (i % 3) {
+                    case 0: builder.append("IF x DO "); break;
+                    case 1: builder.append("WHILE x DO "); break;
+                    default: builder.append("FOR (i = 0; i < 10; i = i + 1) "); break;
+                }
+            }
+            builder.append("y = 1;");
+            for (int i = 0; i < size; i++) {
+                builder.append(" END");
+            }
+            return builder.toString();
+        }
+
+        @Override
+        public String expression(int size) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < size; i++) {
+                builder.append(i % 2 == 0 ? "(" : "f(");
+            }
+            builder.append('x');
+            for (int i = 0; i < size; i++) {
+                builder.append(')');
+            }
+            return builder.toString();
+        }
+    },
+
+    /**
+     * One long chain of binary operators, cycling through every precedence
+     * level so the chain both climbs and falls.
+     */
+    CHAIN {
+        private final String[] operators = {" + ", " * ", " - ", " < ", " && ", " / ", " == ", " || ", " ^ ", " != "};
+
+        @Override
+        public String statement(int size) {
+            return "x = " + expression(size) + ";";
+        }
+
+        @Override
+        public String expression(int size) {
+            StringBuilder builder = new StringBuilder("a0");
+            for (int i = 1; i < size; i++) {
+                builder.append(operators[i % operators.length]).append('a').append(i);
+            }
+            return builder.toString();
+        }
+    },
+
+    /**
+     * Many small methods with parameters, a declaration, and a return, and as
+     * a statement or expression a chain of calls to methods like them.
+     */
+    METHODS {
+        @Override
+        public String source(int size) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < size; i++) {
+                builder.append("DEF m").append(i).append("(a: Integer, b: String): Integer DO\n")
+                        .append("    LET c: Integer = a + ").append(i).append(";\n")
+                        .append("    print(b);\n")
+                        .append("    RETURN c;\n")
+                        .append("END\n");
+            }
+            return builder.toString();
+        }
+
+        @Override
+        public String statement(int size) {
+            return expression(size) + ";";
+        }
+
+        @Override
+        public String expression(int size) {
+            StringBuilder builder = new StringBuilder("x");
+            for (int i = 0; i < size; i++) {
+                builder.append(".m").append(i).append("(a + ").append(i).append(", b)");
+            }
+            return builder.toString();
+        }
+    },
+
+    /**
+     * Long lists of simple statements inside an {@code IF} and its {@code
+     * ELSE}, and as a source also inside a {@code FOR} and a {@code WHILE}.
+     * As an expression, a long list of arguments to one call.
+     */
+    BLOCKS {
+        @Override
+        public String source(int size) {
+            return "DEF main() DO\n"
+                    + block("FOR (i = 0; i < 10; i = i + 1)\n", size) + "END\n"
+                    + block("WHILE x DO\n", size) + "END\n"
+                    + statement(size) + "\n"
+                    + "END\n";
+        }
+
+        @Override
+        public String statement(int size) {
+            return block("IF x DO\n", size) + block("ELSE\n", size) + "END";
+        }
+
+        @Override
+        public String expression(int size) {
+            StringBuilder builder = new StringBuilder("f(");
+            for (int i = 0; i < size; i++) {
+                builder.append(i == 0 ? "" : ", ").append(i % 2 == 0 ? "y + " + i : "y");
+            }
+            return builder.append(')').toString();
+        }
+
+        private String block(String header, int size) {
+            StringBuilder builder = new StringBuilder(header);
+            for (int i = 0; i < size; i++) {
+                switch (i % 3) {
+                    case 0: builder.append("    y = y + ").append(i).append(";\n"); break;
+                    case 1: builder.append("    print(y);\n"); break;
+                    default: builder.append("    LET z").append(i).append(" = y;\n"); break;
+                }
+            }
+            return builder.toString();
+        }
+    };
+
+    /**
+     * Generates a source, which by default is the {@link #statement(int)}
+     * inside a method.
+     */
+    public String source(int size) {
+        return "DEF main() DO\n" + statement(size) + "\nEND\n";
+    }
+
+    /**
+     * Generates a single statement.
+     */
+    public abstract String statement(int size);
+
+    /**
+     * Generates a single expression.
+     */
+    public abstract String expression(int size);
+
+}
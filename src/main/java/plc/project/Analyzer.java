@@ -10,6 +10,7 @@ import java.util.ArrayList;
 public final class Analyzer implements Ast.Visitor<Void> {
     public Scope scope;
     private Ast.Method method;
+    private final List<ParseException> diagnostics = new ArrayList<>();
 
     public Analyzer(Scope parent) {
         scope = new Scope(parent);
@@ -20,6 +21,16 @@ public final class Analyzer implements Ast.Visitor<Void> {
         return scope;
     }
 
+    /**
+     * Returns the errors of the {@link Ast.Statement.Error} statements in a
+     * source from a {@link Parser#recovering()} parser, in the order they
+     * were visited. These statements are skipped, so the rest of the method
+     * and the other methods are still analyzed.
+     */
+    public List<ParseException> getDiagnostics() {
+        return diagnostics;
+    }
+
     @Override
     public Void visit(Ast.Source ast) {
         ast.getFields().forEach(this::visit);
@@ -198,6 +209,12 @@ public final class Analyzer implements Ast.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visit(Ast.Statement.Error ast) {
+        diagnostics.add(ast.getException());
+        return null;
+    }
+
     @Override
     public Void visit(Ast.Expression.Literal ast) {
         Object literal = ast.getLiteral();
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * See each project assignment specification for specific notes on the AST classes
@@ -11,6 +12,44 @@ import java.util.Optional;
  */
 public abstract class Ast {
 
+    /**
+     * The span of a node which was not parsed from source, such as one that
+     * was created directly.
+     */
+    public static final long NO_SPAN = -1;
+
+    private long span = NO_SPAN;
+
+    /**
+     * Returns the offsets of the first character of the source this node was
+     * parsed from and of the character after its last, packed into a long by
+     * {@link #span(int, int)}, or {@link #NO_SPAN}. Spans are set by the
+     * {@link Parser} and are not compared by {@link #equals(Object)}.
+     */
+    public long getSpan() {
+        return span;
+    }
+
+    public void setSpan(long span) {
+        this.span = span;
+    }
+
+    /**
+     * Packs a start and end offset into a span, with the start in the high
+     * half so spans which start earlier compare as smaller.
+     */
+    public static long span(int start, int end) {
+        return (long) start << 32 | end & 0xFFFFFFFFL;
+    }
+
+    public static int getStart(long span) {
+        return (int) (span >> 32);
+    }
+
+    public static int getEnd(long span) {
+        return (int) span;
+    }
+
     public static final class Source extends Ast {
 
         private final List<Field> fields;
@@ -123,7 +162,8 @@ public abstract class Ast {
         private final List<String> parameters;
         private final List<String> parameterTypeNames;
         private final Optional<String> returnTypeName;
-        private final List<Statement> statements;
+        private volatile List<Statement> statements;
+        private Supplier<List<Statement>> body; // guarded by this, until the statements are set
         private Environment.Function function = null;
         
         public Method(String name, List<String> parameters, List<Statement> statements) {
@@ -142,6 +182,17 @@ public abstract class Ast {
             this.statements = statements;
         }
 
+        /**
+         * Creates a method whose statements are only parsed, by the given
+         * function, the first time they are requested (see {@link
+         * Parser#lazy()}). Any {@link ParseException} in the body is thrown
+         * from {@link #getStatements()}, and again from each later call.
+         */
+        public Method(String name, List<String> parameters, List<String> parameterTypeNames, Optional<String> returnTypeName, Supplier<List<Statement>> body) {
+            this(name, parameters, parameterTypeNames, returnTypeName, (List<Statement>) null);
+            this.body = body;
+        }
+
         public String getName() {
             return name;
         }
@@ -158,7 +209,24 @@ public abstract class Ast {
             return returnTypeName;
         }
 
+        /**
+         * Returns the statements, parsing them first if this method is lazy.
+         * Methods may be shared between threads, so the body is parsed once
+         * under this method's lock and the statements are published through
+         * a volatile field.
+         */
         public List<Statement> getStatements() {
+            List<Statement> statements = this.statements;
+            if (statements == null) {
+                synchronized (this) {
+                    statements = this.statements;
+                    if (statements == null) {
+                        statements = body.get();
+                        this.statements = statements;
+                        body = null;
+                    }
+                }
+            }
             return statements;
         }
 
@@ -173,7 +241,10 @@ public abstract class Ast {
             this.function = function;
         }
 
-
+        /**
+         * Compares the statements of both methods, which parses a lazy body
+         * and throws any {@link ParseException} in it.
+         */
         @Override
         public boolean equals(Object obj) {
             return obj instanceof Ast.Method &&
@@ -181,11 +252,14 @@ public abstract class Ast {
                     parameters.equals(((Ast.Method) obj).parameters) &&
                     parameterTypeNames.equals(((Ast.Method) obj).parameterTypeNames) &&
                     returnTypeName.equals(((Ast.Method) obj).returnTypeName) &&
-                    statements.equals(((Ast.Method) obj).statements) &&
+                    getStatements().equals(((Ast.Method) obj).getStatements()) &&
                     Objects.equals(function, ((Ast.Method) obj).function);
         }
 
-
+        /**
+         * Includes the statements only if they have been parsed, so logging a
+         * lazy method does not parse its body.
+         */
         @Override
         public String toString() {
             return "Method{" +
@@ -193,7 +267,7 @@ public abstract class Ast {
                     ", parameters=" + parameters +
                     ", parameterTypeNames=" + parameterTypeNames +
                     ", returnTypeName='" + returnTypeName + '\'' +
-                    ", statements=" + statements +
+                    ", statements=" + (statements != null ? statements : "<unparsed>") +
                     ", function=" + function +
                     '}';
         }
@@ -504,6 +578,44 @@ public abstract class Ast {
 
         }
 
+        /**
+         * Stands in for a statement which could not be parsed, when the parser
+         * is recovering from errors (see {@link Parser#recovering()}).
+         */
+        public static final class Error extends Statement {
+
+            private final ParseException exception;
+
+            public Error(ParseException exception) {
+                this.exception = exception;
+            }
+
+            public ParseException getException() {
+                return exception;
+            }
+
+            @Override
+            public boolean equals(Object obj) {
+                return obj instanceof Error &&
+                        exception.getMessage().equals(((Error) obj).exception.getMessage()) &&
+                        exception.getIndex() == ((Error) obj).exception.getIndex();
+            }
+
+            @Override
+            public int hashCode() {
+                return Objects.hash(exception.getMessage(), exception.getIndex());
+            }
+
+            @Override
+            public String toString() {
+                return "Ast.Statement.Error{" +
+                        "message=" + exception.getMessage() +
+                        ", index=" + exception.getIndex() +
+                        '}';
+            }
+
+        }
+
     }
 
     public static abstract class Expression extends Ast {
@@ -797,6 +909,8 @@ public abstract class Ast {
                 return visit((Ast.Statement.While) ast);
             } else if (ast instanceof Ast.Statement.Return) {
                 return visit((Ast.Statement.Return) ast);
+            } else if (ast instanceof Ast.Statement.Error) {
+                return visit((Ast.Statement.Error) ast);
             } else if (ast instanceof Ast.Expression.Literal) {
                 return visit((Ast.Expression.Literal) ast);
             } else if (ast instanceof Ast.Expression.Group) {
@@ -832,6 +946,8 @@ public abstract class Ast {
 
         T visit(Ast.Statement.Return ast);
 
+        T visit(Ast.Statement.Error ast);
+
         T visit(Ast.Expression.Literal ast);
 
         T visit(Ast.Expression.Group ast);
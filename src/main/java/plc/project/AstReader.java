@@ -0,0 +1,442 @@
+package plc.project;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reads an {@link Ast.Source} written by {@link AstWriter}, which is equal to
+ * the one that was written. The bytes can be in any {@link ByteBuffer},
+ * including a file mapped into memory by {@link #read(Path)}, so only the
+ * tree is allocated. Each distinct string is created once and shared by every
+ * node which uses it, and each node has the span it was written with.
+ *
+ * Nodes with children are read by {@link Frame}s on an explicit stack, as
+ * an {@link Parser#iterative()} parser does, so trees of any depth are read
+ * without overflowing the thread's stack.
+ */
+public final class AstReader {
+
+    /**
+     * The tag of the frame reading the source itself, which has no tag of
+     * its own in the encoding.
+     */
+    private static final int SOURCE = -1;
+
+    private final ByteBuffer buffer;
+    private final String[] strings;
+    private int start = 0;
+
+    private AstReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+        for (byte b : AstWriter.MAGIC) {
+            if (buffer.get() != b) {
+                throw new IllegalArgumentException("Not an encoded AST.");
+            }
+        }
+        long version = readVarint();
+        if (version != AstWriter.VERSION) {
+            throw new IllegalArgumentException("Unsupported AST encoding version " + version + ".");
+        }
+        strings = new String[readCount()];
+        for (int i = 0; i < strings.length; i++) {
+            char[] chars = new char[readCount()];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = (char) readVarint();
+            }
+            strings[i] = new String(chars);
+        }
+    }
+
+    public static Ast.Source read(byte[] bytes) {
+        return read(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Reads a source from the buffer's position, advancing it past the end.
+     */
+    public static Ast.Source read(ByteBuffer buffer) {
+        return new AstReader(buffer).readSource();
+    }
+
+    /**
+     * Maps the file into memory and reads a source from it.
+     */
+    public static Ast.Source read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads the source, running the frame of each node with children on an
+     * explicit stack until the frame of the source finishes.
+     */
+    private Ast.Source readSource() {
+        ArrayDeque<Frame> stack = new ArrayDeque<>();
+        stack.push(new NodeFrame(SOURCE, readSpan()));
+        while (true) {
+            Object value = stack.peek().next();
+            if (value instanceof Frame) {
+                stack.push((Frame) value);
+            } else {
+                stack.pop();
+                if (stack.isEmpty()) {
+                    return (Ast.Source) value;
+                }
+                stack.peek().add(value);
+            }
+        }
+    }
+
+    /**
+     * Reads the statement with the given tag, which is either the statement
+     * or a frame which reads it.
+     */
+    private Object readStatement(int tag) {
+        switch (tag) {
+            case AstWriter.EXPRESSION_STATEMENT:
+            case AstWriter.DECLARATION:
+            case AstWriter.ASSIGNMENT:
+            case AstWriter.IF:
+            case AstWriter.FOR:
+            case AstWriter.WHILE:
+            case AstWriter.RETURN:
+                return new NodeFrame(tag, readSpan());
+            case AstWriter.ERROR:
+                return spanned(readSpan(), new Ast.Statement.Error(new ParseException(readString(), (int) readSigned())));
+        }
+        throw unexpected(tag);
+    }
+
+    /**
+     * Reads the expression with the given tag, which is either the expression
+     * or a frame which reads it.
+     */
+    private Object readExpression(int tag) {
+        switch (tag) {
+            case AstWriter.NIL:
+                return spanned(readSpan(), new Ast.Expression.Literal(null));
+            case AstWriter.TRUE:
+                return spanned(readSpan(), new Ast.Expression.Literal(true));
+            case AstWriter.FALSE:
+                return spanned(readSpan(), new Ast.Expression.Literal(false));
+            case AstWriter.INTEGER:
+            case AstWriter.BIG_INTEGER:
+                return spanned(readSpan(), new Ast.Expression.Literal(readInteger(tag)));
+            case AstWriter.DECIMAL:
+                long span = readSpan();
+                int scale = (int) readSigned();
+                return spanned(span, new Ast.Expression.Literal(new BigDecimal(readInteger(buffer.get()), scale)));
+            case AstWriter.CHARACTER:
+                return spanned(readSpan(), new Ast.Expression.Literal((char) readVarint()));
+            case AstWriter.STRING:
+                return spanned(readSpan(), new Ast.Expression.Literal(readString()));
+            case AstWriter.GROUP:
+            case AstWriter.BINARY:
+            case AstWriter.ACCESS:
+            case AstWriter.FUNCTION:
+                return new NodeFrame(tag, readSpan());
+        }
+        throw unexpected(tag);
+    }
+
+    private long readSpan() {
+        long length = readVarint();
+        if (length == 0) {
+            return Ast.NO_SPAN;
+        }
+        start += (int) readSigned();
+        return Ast.span(start, start + (int) length - 1);
+    }
+
+    private static <T extends Ast> T spanned(long span, T ast) {
+        ast.setSpan(span);
+        return ast;
+    }
+
+    private BigInteger readInteger(int tag) {
+        if (tag == AstWriter.INTEGER) {
+            return BigInteger.valueOf(readSigned());
+        } else if (tag == AstWriter.BIG_INTEGER) {
+            byte[] bytes = new byte[readCount()];
+            buffer.get(bytes);
+            return new BigInteger(bytes);
+        }
+        throw unexpected(tag);
+    }
+
+    private String readString() {
+        return strings[readCount()];
+    }
+
+    private List<String> readStrings() {
+        int count = readCount();
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(readString());
+        }
+        return strings;
+    }
+
+    private Optional<String> readOptionalString() {
+        int index = readCount();
+        return index == 0 ? Optional.empty() : Optional.of(strings[index - 1]);
+    }
+
+    private void expect(int tag) {
+        int actual = buffer.get();
+        if (actual != tag) {
+            throw unexpected(actual);
+        }
+    }
+
+    /**
+     * Reads a node with children, or a list of nodes, as one call of a
+     * recursive reader would. {@link #next()} reads up to the next child
+     * which needs a frame of its own and returns that frame, and is called
+     * again after the child's value is {@link #add(Object) added}, until it
+     * returns the value of this frame.
+     */
+    private abstract static class Frame {
+
+        abstract Object next();
+
+        abstract void add(Object value);
+
+    }
+
+    /**
+     * Reads the parts of a node after its tag and span, in the order {@link
+     * AstWriter} writes them, and then creates the node.
+     */
+    private final class NodeFrame extends Frame {
+
+        private final int tag;
+        private final long span;
+        private final String parts;
+        private final List<Object> values = new ArrayList<>();
+
+        private NodeFrame(int tag, long span) {
+            this.tag = tag;
+            this.span = span;
+            this.parts = parts(tag);
+        }
+
+        @Override
+        Object next() {
+            while (values.size() < parts.length()) {
+                Object value = readPart(parts.charAt(values.size()));
+                if (value instanceof Frame) {
+                    return value;
+                }
+                values.add(value);
+            }
+            return spanned(span, create());
+        }
+
+        @Override
+        void add(Object value) {
+            values.add(value);
+        }
+
+        /**
+         * Reads one part of the node, which is either its value or a frame
+         * that reads it.
+         */
+        private Object readPart(char part) {
+            switch (part) {
+                case 's':
+                    return readString();
+                case 'p':
+                    return readOptionalString();
+                case 'n':
+                    return readStrings();
+                case 'b':
+                    return buffer.get() != 0;
+                case 'e':
+                    return readExpression(buffer.get());
+                case 'o': {
+                    int tag = buffer.get();
+                    return tag == AstWriter.NONE ? null : readExpression(tag);
+                }
+                case 't': {
+                    int tag = buffer.get();
+                    return tag == AstWriter.NONE ? null : readStatement(tag);
+                }
+                default:
+                    return new ListFrame(part, readCount());
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Ast create() {
+            switch (tag) {
+                case SOURCE:
+                    return new Ast.Source((List<Ast.Field>) values.get(0), (List<Ast.Method>) values.get(1));
+                case AstWriter.FIELD:
+                    return new Ast.Field((String) values.get(0), (String) values.get(1), (Boolean) values.get(2), optional(3));
+                case AstWriter.METHOD:
+                    return new Ast.Method((String) values.get(0), (List<String>) values.get(1), (List<String>) values.get(2),
+                            (Optional<String>) values.get(3), (List<Ast.Statement>) values.get(4));
+                case AstWriter.EXPRESSION_STATEMENT:
+                    return new Ast.Statement.Expression(expression(0));
+                case AstWriter.DECLARATION:
+                    return new Ast.Statement.Declaration((String) values.get(0), (Optional<String>) values.get(1), optional(2));
+                case AstWriter.ASSIGNMENT:
+                    return new Ast.Statement.Assignment(expression(0), expression(1));
+                case AstWriter.IF:
+                    return new Ast.Statement.If(expression(0), (List<Ast.Statement>) values.get(1), (List<Ast.Statement>) values.get(2));
+                case AstWriter.FOR:
+                    return new Ast.Statement.For((Ast.Statement) values.get(0), expression(1), (Ast.Statement) values.get(2),
+                            (List<Ast.Statement>) values.get(3));
+                case AstWriter.WHILE:
+                    return new Ast.Statement.While(expression(0), (List<Ast.Statement>) values.get(1));
+                case AstWriter.RETURN:
+                    return new Ast.Statement.Return(expression(0));
+                case AstWriter.GROUP:
+                    return new Ast.Expression.Group(expression(0));
+                case AstWriter.BINARY:
+                    return new Ast.Expression.Binary((String) values.get(0), expression(1), expression(2));
+                case AstWriter.ACCESS:
+                    return new Ast.Expression.Access(optional(0), (String) values.get(1));
+                default:
+                    return new Ast.Expression.Function(optional(0), (String) values.get(1), (List<Ast.Expression>) values.get(2));
+            }
+        }
+
+        private Ast.Expression expression(int index) {
+            return (Ast.Expression) values.get(index);
+        }
+
+        private Optional<Ast.Expression> optional(int index) {
+            return Optional.ofNullable(expression(index));
+        }
+
+    }
+
+    /**
+     * Returns the parts of the node with the given tag, one character each:
+     * {@code s} a string, {@code p} an optional string, {@code n} a list of
+     * strings, {@code b} a boolean, {@code e} an expression, {@code o} an
+     * optional expression, {@code t} an optional statement, and {@code F},
+     * {@code M}, {@code S}, and {@code E} lists of fields, methods,
+     * statements, and expressions.
+     */
+    private static String parts(int tag) {
+        switch (tag) {
+            case SOURCE:
+                return "FM";
+            case AstWriter.FIELD:
+                return "ssbo";
+            case AstWriter.METHOD:
+                return "snnpS";
+            case AstWriter.DECLARATION:
+                return "spo";
+            case AstWriter.ASSIGNMENT:
+                return "ee";
+            case AstWriter.IF:
+                return "eSS";
+            case AstWriter.FOR:
+                return "tetS";
+            case AstWriter.WHILE:
+                return "eS";
+            case AstWriter.BINARY:
+                return "see";
+            case AstWriter.ACCESS:
+                return "os";
+            case AstWriter.FUNCTION:
+                return "osE";
+            default:
+                return "e"; // an expression statement, return, or group
+        }
+    }
+
+    /**
+     * Reads the given number of nodes of one kind into a list.
+     */
+    private final class ListFrame extends Frame {
+
+        private final char kind;
+        private final List<Object> values;
+        private final int count;
+
+        private ListFrame(char kind, int count) {
+            this.kind = kind;
+            this.count = count;
+            this.values = new ArrayList<>(count);
+        }
+
+        @Override
+        Object next() {
+            while (values.size() < count) {
+                Object value = readNode();
+                if (value instanceof Frame) {
+                    return value;
+                }
+                values.add(value);
+            }
+            return values;
+        }
+
+        @Override
+        void add(Object value) {
+            values.add(value);
+        }
+
+        private Object readNode() {
+            switch (kind) {
+                case 'F':
+                    expect(AstWriter.FIELD);
+                    return new NodeFrame(AstWriter.FIELD, readSpan());
+                case 'M':
+                    expect(AstWriter.METHOD);
+                    return new NodeFrame(AstWriter.METHOD, readSpan());
+                case 'S':
+                    return readStatement(buffer.get());
+                default:
+                    return readExpression(buffer.get());
+            }
+        }
+
+    }
+
+    private IllegalArgumentException unexpected(int tag) {
+        return new IllegalArgumentException("Unexpected tag " + tag + " at byte " + (buffer.position() - 1) + ".");
+    }
+
+    /**
+     * Reads a varint which is a count or an index, so it fits in an int.
+     */
+    private int readCount() {
+        long count = readVarint();
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Count " + count + " is too large.");
+        }
+        return (int) count;
+    }
+
+    private long readVarint() {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private long readSigned() {
+        long value = readVarint();
+        return value >>> 1 ^ -(value & 1);
+    }
+
+}
@@ -0,0 +1,395 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Writes an {@link Ast.Source} in a compact binary format, which {@link
+ * AstReader} loads much faster than lexing and parsing the program again.
+ *
+ * The format starts with the bytes {@code PLCA} and a version, followed by
+ * a table of the distinct strings in the tree (names, type names, operators,
+ * and string literals) and then the nodes in pre-order. Each string is its
+ * length and its chars as varints, which is as compact as UTF-8 for ASCII
+ * and keeps any unpaired surrogates in a string literal. Each node is a tag
+ * byte followed by its properties and children, where counts, string table
+ * indices, and integers are varints, with signed integers zigzag encoded. A
+ * missing node, such as an empty {@link Optional} or the initialization of
+ * a {@code FOR} without one, is the tag {@link #NONE}. Literals have a tag
+ * for each type, so {@code NIL} and booleans are a single byte.
+ *
+ * The span of each node follows its tag, or starts the source, as its length
+ * plus one and then the zigzag distance from the start of the previous span,
+ * or just 0 for {@link Ast#NO_SPAN}. Nodes in pre-order start in order, so
+ * the distance is usually a single byte.
+ *
+ * Only what the parser produces is written: the variables, functions, and
+ * types set by the {@link Analyzer} are not, so a tree round-trips exactly
+ * under {@link Object#equals} before it is analyzed.
+ *
+ * Each visit writes a node's own properties and pushes the rest, including
+ * its children, onto an explicit stack instead of visiting them, so trees
+ * nested as deeply as an {@link Parser#iterative()} parser allows are
+ * written without overflowing the thread's stack.
+ */
+public final class AstWriter implements Ast.Visitor<Void> {
+
+    static final byte[] MAGIC = {'P', 'L', 'C', 'A'};
+    static final int VERSION = 2;
+
+    static final int NONE = 0;
+    static final int FIELD = 1;
+    static final int METHOD = 2;
+    static final int EXPRESSION_STATEMENT = 3;
+    static final int DECLARATION = 4;
+    static final int ASSIGNMENT = 5;
+    static final int IF = 6;
+    static final int FOR = 7;
+    static final int WHILE = 8;
+    static final int RETURN = 9;
+    static final int ERROR = 10;
+    static final int NIL = 11;
+    static final int TRUE = 12;
+    static final int FALSE = 13;
+    static final int INTEGER = 14;
+    static final int BIG_INTEGER = 15;
+    static final int DECIMAL = 16;
+    static final int CHARACTER = 17;
+    static final int STRING = 18;
+    static final int GROUP = 19;
+    static final int BINARY = 20;
+    static final int ACCESS = 21;
+    static final int FUNCTION = 22;
+
+    private final Map<String, Integer> indices = new HashMap<>();
+    private final Bytes strings = new Bytes();
+    private final Bytes nodes = new Bytes();
+    private final ArrayDeque<Object> stack = new ArrayDeque<>();
+    private int start = 0;
+
+    private AstWriter() {}
+
+    /**
+     * Returns the encoding of the given source.
+     */
+    public static byte[] write(Ast.Source source) {
+        AstWriter writer = new AstWriter();
+        writer.push(source);
+        writer.run();
+        Bytes bytes = new Bytes();
+        for (byte b : MAGIC) {
+            bytes.write(b);
+        }
+        bytes.writeVarint(VERSION);
+        bytes.writeVarint(writer.indices.size());
+        bytes.write(writer.strings);
+        bytes.write(writer.nodes);
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Void visit(Ast.Source ast) {
+        writeSpan(ast);
+        push(ast.getFields(), ast.getMethods());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Field ast) {
+        writeTag(FIELD, ast);
+        writeString(ast.getName());
+        writeString(ast.getTypeName());
+        nodes.write(ast.getConstant() ? 1 : 0);
+        push(ast.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Method ast) {
+        writeTag(METHOD, ast);
+        writeString(ast.getName());
+        writeStrings(ast.getParameters());
+        writeStrings(ast.getParameterTypeNames());
+        writeOptionalString(ast.getReturnTypeName());
+        push(ast.getStatements());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Expression ast) {
+        writeTag(EXPRESSION_STATEMENT, ast);
+        push(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Declaration ast) {
+        writeTag(DECLARATION, ast);
+        writeString(ast.getName());
+        writeOptionalString(ast.getTypeName());
+        push(ast.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Assignment ast) {
+        writeTag(ASSIGNMENT, ast);
+        push(ast.getReceiver(), ast.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.If ast) {
+        writeTag(IF, ast);
+        push(ast.getCondition(), ast.getThenStatements(), ast.getElseStatements());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.For ast) {
+        writeTag(FOR, ast);
+        push(Optional.ofNullable(ast.getInitialization()), ast.getCondition(),
+                Optional.ofNullable(ast.getIncrement()), ast.getStatements());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.While ast) {
+        writeTag(WHILE, ast);
+        push(ast.getCondition(), ast.getStatements());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Return ast) {
+        writeTag(RETURN, ast);
+        push(ast.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Error ast) {
+        writeTag(ERROR, ast);
+        writeString(ast.getException().getMessage());
+        nodes.writeSigned(ast.getException().getIndex());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Literal ast) {
+        Object literal = ast.getLiteral();
+        if (literal == null) {
+            writeTag(NIL, ast);
+        } else if (literal instanceof Boolean) {
+            writeTag((Boolean) literal ? TRUE : FALSE, ast);
+        } else if (literal instanceof BigInteger) {
+            writeTag(integerTag((BigInteger) literal), ast);
+            writeInteger((BigInteger) literal);
+        } else if (literal instanceof BigDecimal) {
+            writeTag(DECIMAL, ast);
+            nodes.writeSigned(((BigDecimal) literal).scale());
+            nodes.write(integerTag(((BigDecimal) literal).unscaledValue()));
+            writeInteger(((BigDecimal) literal).unscaledValue());
+        } else if (literal instanceof Character) {
+            writeTag(CHARACTER, ast);
+            nodes.writeVarint((Character) literal);
+        } else if (literal instanceof String) {
+            writeTag(STRING, ast);
+            writeString((String) literal);
+        } else {
+            throw new IllegalArgumentException("Unsupported literal type " + literal.getClass().getName() + ".");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Group ast) {
+        writeTag(GROUP, ast);
+        push(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Binary ast) {
+        writeTag(BINARY, ast);
+        writeString(ast.getOperator());
+        push(ast.getLeft(), ast.getRight());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Access ast) {
+        writeTag(ACCESS, ast);
+        push(ast.getReceiver(), ast.getName());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Function ast) {
+        writeTag(FUNCTION, ast);
+        push(ast.getReceiver(), ast.getName(), ast.getArguments());
+        return null;
+    }
+
+    private static int integerTag(BigInteger integer) {
+        return integer.bitLength() < Long.SIZE ? INTEGER : BIG_INTEGER;
+    }
+
+    /**
+     * Writes an integer after its tag, as a zigzag varint if it fits in a
+     * long, and as its two's complement bytes otherwise.
+     */
+    private void writeInteger(BigInteger integer) {
+        if (integer.bitLength() < Long.SIZE) {
+            nodes.writeSigned(integer.longValue());
+        } else {
+            byte[] bytes = integer.toByteArray();
+            nodes.writeVarint(bytes.length);
+            nodes.write(bytes, bytes.length);
+        }
+    }
+
+    private void writeTag(int tag, Ast ast) {
+        nodes.write(tag);
+        writeSpan(ast);
+    }
+
+    /**
+     * Writes a span as its length plus one, or 0 if there is none, and then
+     * its start relative to the start of the previous span written.
+     */
+    private void writeSpan(Ast ast) {
+        long span = ast.getSpan();
+        if (span == Ast.NO_SPAN) {
+            nodes.write(0);
+        } else {
+            nodes.writeVarint(Ast.getEnd(span) - Ast.getStart(span) + 1L);
+            nodes.writeSigned((long) Ast.getStart(span) - start);
+            start = Ast.getStart(span);
+        }
+    }
+
+    /**
+     * Pushes what follows the current node's properties, in order, to be
+     * written after them: nodes, lists of nodes (written as their count and
+     * then each node), optional nodes ({@link #NONE} if empty), and strings.
+     */
+    private void push(Object... items) {
+        for (int i = items.length - 1; i >= 0; i--) {
+            stack.push(items[i]);
+        }
+    }
+
+    /**
+     * Writes everything on the stack, in pre-order.
+     */
+    private void run() {
+        while (!stack.isEmpty()) {
+            Object item = stack.pop();
+            if (item instanceof Ast) {
+                visit((Ast) item);
+            } else if (item instanceof List) {
+                List<?> list = (List<?>) item;
+                nodes.writeVarint(list.size());
+                push(list.toArray());
+            } else if (item instanceof Optional) {
+                if (((Optional<?>) item).isPresent()) {
+                    stack.push(((Optional<?>) item).get());
+                } else {
+                    nodes.write(NONE);
+                }
+            } else {
+                writeString((String) item);
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the string in the table, adding it if it is new.
+     */
+    private int indexOf(String string) {
+        Integer index = indices.get(string);
+        if (index == null) {
+            index = indices.size();
+            indices.put(string, index);
+            strings.writeVarint(string.length());
+            for (int i = 0; i < string.length(); i++) {
+                strings.writeVarint(string.charAt(i));
+            }
+        }
+        return index;
+    }
+
+    private void writeString(String string) {
+        nodes.writeVarint(indexOf(string));
+    }
+
+    private void writeStrings(List<String> strings) {
+        nodes.writeVarint(strings.size());
+        for (String string : strings) {
+            writeString(string);
+        }
+    }
+
+    /**
+     * Writes an optional string as its index plus one, or 0 if it is empty.
+     */
+    private void writeOptionalString(Optional<String> string) {
+        nodes.writeVarint(string.isPresent() ? indexOf(string.get()) + 1 : 0);
+    }
+
+    /**
+     * A growable byte array, which unlike {@link java.io.ByteArrayOutputStream}
+     * is not synchronized.
+     */
+    private static final class Bytes {
+
+        private byte[] bytes = new byte[256];
+        private int size = 0;
+
+        private void ensure(int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, 2 * bytes.length));
+            }
+        }
+
+        void write(int b) {
+            ensure(size + 1);
+            bytes[size++] = (byte) b;
+        }
+
+        void write(byte[] b, int length) {
+            ensure(size + length);
+            System.arraycopy(b, 0, bytes, size, length);
+            size += length;
+        }
+
+        void write(Bytes other) {
+            write(other.bytes, other.size);
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeSigned(long value) {
+            writeVarint(value << 1 ^ value >> 63);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+    }
+
+}
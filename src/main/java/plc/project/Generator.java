@@ -228,6 +228,12 @@ public final class Generator implements Ast.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visit(Ast.Statement.Error ast) {
+        writer.write("// " + ast.getException().getMessage() + " (index " + ast.getException().getIndex() + ")");
+        return null;
+    }
+
     @Override
     public Void visit(Ast.Expression.Literal ast) {
         Object literal = ast.getLiteral();
@@ -0,0 +1,442 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Parses a program which is edited repeatedly, such as in a watch loop, by
+ * reparsing only the fields and methods whose tokens changed. Every other
+ * {@link Ast.Field} and {@link Ast.Method} is the same object as in the
+ * previous {@link Ast.Source}, including anything the analyzer set on it.
+ *
+ * The tokens are split into declarations as in {@link
+ * Parser#parseParallel}. After an edit, the declarations before the edit
+ * keep their tokens, and the declarations after it keep theirs at shifted
+ * indices (as with {@link Lexer#relex}), so both are reused without looking
+ * at their tokens. The tokens in between are split again, and each of those
+ * declarations is reused if a previous declaration in between has the same
+ * tokens, which is found by a hash of the types and literals of its tokens,
+ * and parsed otherwise. Each previous declaration is reused at most once, so
+ * no node appears twice in a tree. The spans of a reused declaration are
+ * moved to where its tokens now are, which only visits its nodes if the
+ * tokens moved.
+ *
+ * If the tokens cannot be split into declarations which each parse exactly,
+ * such as on a parse error, they are parsed with {@link Parser#parseSource()}
+ * instead, which gives the same result or exception as always. After an
+ * exception the previous declarations are kept, so they are still reused
+ * once the error is fixed, although the next edit is then reparsed as if
+ * its position were not known, since the edit is relative to tokens which
+ * did not parse.
+ */
+public final class IncrementalParser {
+
+    private List<Token> tokens;
+    private int[] ends = new int[0];
+    private List<Ast> declarations = new ArrayList<>();
+    private Ast.Source source;
+    private boolean current;
+
+    /**
+     * Parses the initial tokens, in the same way as {@link #reparse(List)}.
+     */
+    public IncrementalParser(List<Token> tokens) throws ParseException {
+        reparse(tokens);
+    }
+
+    public Ast.Source getSource() {
+        return source;
+    }
+
+    /**
+     * Parses the tokens after an edit which replaced {@code removed}
+     * characters at {@code offset} with {@code inserted} characters, as for
+     * {@link Lexer#relex}, whose result these tokens usually are. The result
+     * is equal to parsing the tokens with {@link Parser#parseSource()}.
+     */
+    public Ast.Source reparse(List<Token> tokens, int offset, int removed, int inserted) throws ParseException {
+        if (!current) {
+            return reparse(tokens);
+        }
+        int first = 0;
+        while (first < ends.length && end(this.tokens.get(ends[first] - 1)) < offset) {
+            first++;
+        }
+        int last = ends.length;
+        int next = tokens.size();
+        while (last > first) {
+            int start = this.tokens.get(last == 1 ? 0 : ends[last - 2]).getIndex();
+            if (start < offset + removed) {
+                break;
+            }
+            int token = find(tokens, start + inserted - removed);
+            if (token == -1) {
+                break;
+            }
+            last--;
+            next = token;
+        }
+        return parseBetween(tokens, first, last, next);
+    }
+
+    /**
+     * Parses the tokens without knowing where they were edited, reusing any
+     * previous declaration with the same tokens as one of the new ones.
+     */
+    public Ast.Source reparse(List<Token> tokens) throws ParseException {
+        return parseBetween(tokens, 0, ends.length, tokens.size());
+    }
+
+    /**
+     * Reuses the previous declarations before {@code first} at the same
+     * indices and those from {@code last} at indices shifted so the first of
+     * them starts at the token {@code next}, and splits the tokens in between.
+     */
+    private Ast.Source parseBetween(List<Token> tokens, int first, int last, int next) throws ParseException {
+        current = false;
+        int start = first == 0 ? 0 : ends[first - 1];
+        int[] middle = Parser.scanDeclarations(tokens.subList(start, next));
+        if (middle == null) {
+            return parseSource(tokens);
+        }
+        Map<Integer, ArrayDeque<Integer>> previous = new HashMap<>();
+        for (int i = first; i < last; i++) {
+            previous.computeIfAbsent(hash(this.tokens, i == 0 ? 0 : ends[i - 1], ends[i]), hash -> new ArrayDeque<>()).add(i);
+        }
+        int shift = last == ends.length ? 0 : next - (last == 0 ? 0 : ends[last - 1]);
+        int[] ends = Arrays.copyOf(this.ends, first + middle.length + this.ends.length - last);
+        List<Ast> declarations = new ArrayList<>(this.declarations.subList(0, first));
+        List<Runnable> respans = new ArrayList<>();
+        for (int i = 0; i < middle.length; i++) {
+            int begin = i == 0 ? start : start + middle[i - 1];
+            int end = start + middle[i];
+            int candidate = reuse(previous.get(hash(tokens, begin, end)), tokens, begin, end);
+            Ast declaration;
+            if (candidate == -1) {
+                declaration = Parser.parseDeclaration(tokens, begin, end);
+                if (declaration == null) {
+                    return parseSource(tokens);
+                }
+            } else {
+                Ast reused = this.declarations.get(candidate);
+                int previousStart = candidate == 0 ? 0 : this.ends[candidate - 1];
+                respans.add(() -> respan(reused, previousStart, tokens, begin, end));
+                declaration = reused;
+            }
+            ends[first + i] = end;
+            declarations.add(declaration);
+        }
+        // Only move spans once every declaration has parsed, since the previous
+        // declarations are kept if one of them throws.
+        for (Runnable respan : respans) {
+            respan.run();
+        }
+        for (int i = last; i < this.ends.length; i++) {
+            int index = first + middle.length + i - last;
+            ends[index] = this.ends[i] + shift;
+            int offset = tokens.get(index == 0 ? 0 : ends[index - 1]).getIndex() - this.tokens.get(i == 0 ? 0 : this.ends[i - 1]).getIndex();
+            if (offset != 0) {
+                new Respanner(offset).visit(this.declarations.get(i));
+            }
+            declarations.add(this.declarations.get(i));
+        }
+        List<Ast.Field> fields = new ArrayList<>();
+        List<Ast.Method> methods = new ArrayList<>();
+        for (Ast declaration : declarations) {
+            if (declaration instanceof Ast.Field) {
+                fields.add((Ast.Field) declaration);
+            } else {
+                methods.add((Ast.Method) declaration);
+            }
+        }
+        this.tokens = tokens;
+        this.ends = ends;
+        this.declarations = declarations;
+        current = true;
+        source = Parser.span(new Ast.Source(fields, methods), tokens);
+        return source;
+    }
+
+    /**
+     * Parses the tokens without reusing any declarations. Nothing can be
+     * reused from the result, as its declarations are not known to start and
+     * end where the tokens were scanned to.
+     */
+    private Ast.Source parseSource(List<Token> tokens) throws ParseException {
+        source = new Parser(tokens).parseSource();
+        this.tokens = tokens;
+        ends = new int[0];
+        declarations = new ArrayList<>();
+        current = true;
+        return source;
+    }
+
+    /**
+     * Returns the first of the given previous declarations with the same
+     * tokens as those from {@code start} to {@code end} (exclusive), removing
+     * it so it is not reused again, or -1 if there is none.
+     */
+    private int reuse(ArrayDeque<Integer> candidates, List<Token> tokens, int start, int end) {
+        if (candidates == null) {
+            return -1;
+        }
+        for (Integer candidate : candidates) {
+            int previousStart = candidate == 0 ? 0 : ends[candidate - 1];
+            if (ends[candidate] - previousStart == end - start && equals(previousStart, tokens, start, end)) {
+                candidates.remove(candidate);
+                return candidate;
+            }
+        }
+        return -1;
+    }
+
+    private boolean equals(int previousStart, List<Token> tokens, int start, int end) {
+        for (int i = 0; i < end - start; i++) {
+            if (!this.tokens.get(previousStart + i).contentEquals(tokens.get(start + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(List<Token> tokens, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + tokens.get(i).contentHash();
+        }
+        return hash;
+    }
+
+    /**
+     * Moves the spans of a reused declaration from its previous tokens at
+     * {@code previousStart} to the same tokens from {@code start} to {@code
+     * end}. If the tokens are spaced as they were, every span moves by the
+     * same offset, and otherwise each span is moved to the tokens it began
+     * and ended with.
+     */
+    private void respan(Ast declaration, int previousStart, List<Token> tokens, int start, int end) {
+        int offset = tokens.get(start).getIndex() - this.tokens.get(previousStart).getIndex();
+        for (int i = 1; i < end - start; i++) {
+            if (tokens.get(start + i).getIndex() - this.tokens.get(previousStart + i).getIndex() != offset) {
+                new Respanner(this.tokens.subList(previousStart, previousStart + end - start), tokens.subList(start, end)).visit(declaration);
+                return;
+            }
+        }
+        if (offset != 0) {
+            new Respanner(offset).visit(declaration);
+        }
+    }
+
+    private static int end(Token token) {
+        return token.getIndex() + token.getLength();
+    }
+
+    /**
+     * Returns the position of the token starting at the given index, or -1 if
+     * no token starts there.
+     */
+    private static int find(List<Token> tokens, int index) {
+        int low = 0;
+        int high = tokens.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (tokens.get(mid).getIndex() < index) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low < tokens.size() && tokens.get(low).getIndex() == index ? low : -1;
+    }
+
+    /**
+     * Moves every span in a tree, either by an offset or from one list of
+     * tokens to another with the same number of tokens.
+     */
+    private static final class Respanner implements Ast.Visitor<Void> {
+
+        private final int offset;
+        private final List<Token> previous;
+        private final List<Token> tokens;
+
+        private Respanner(int offset) {
+            this.offset = offset;
+            this.previous = null;
+            this.tokens = null;
+        }
+
+        private Respanner(List<Token> previous, List<Token> tokens) {
+            this.offset = 0;
+            this.previous = previous;
+            this.tokens = tokens;
+        }
+
+        private void respan(Ast ast) {
+            long span = ast.getSpan();
+            if (span == Ast.NO_SPAN) {
+                return;
+            } else if (previous == null) {
+                ast.setSpan(Ast.span(Ast.getStart(span) + offset, Ast.getEnd(span) + offset));
+            } else {
+                Token first = tokens.get(find(Ast.getStart(span) + 1));
+                Token last = tokens.get(find(Ast.getEnd(span)));
+                ast.setSpan(Ast.span(first.getIndex(), end(last)));
+            }
+        }
+
+        /**
+         * Returns the position of the last previous token which starts
+         * before the given index.
+         */
+        private int find(int index) {
+            int low = 0;
+            int high = previous.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (previous.get(mid).getIndex() < index) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return Math.max(low - 1, 0);
+        }
+
+        private void visit(List<? extends Ast> asts) {
+            for (Ast ast : asts) {
+                visit(ast);
+            }
+        }
+
+        private void visit(Optional<? extends Ast> ast) {
+            ast.ifPresent(this::visit);
+        }
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            respan(ast);
+            visit(ast.getFields());
+            visit(ast.getMethods());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Field ast) {
+            respan(ast);
+            visit(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Method ast) {
+            respan(ast);
+            visit(ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Expression ast) {
+            respan(ast);
+            visit(ast.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Declaration ast) {
+            respan(ast);
+            visit(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Assignment ast) {
+            respan(ast);
+            visit(ast.getReceiver());
+            visit(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.If ast) {
+            respan(ast);
+            visit(ast.getCondition());
+            visit(ast.getThenStatements());
+            visit(ast.getElseStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.For ast) {
+            respan(ast);
+            visit(Optional.ofNullable(ast.getInitialization()));
+            visit(ast.getCondition());
+            visit(Optional.ofNullable(ast.getIncrement()));
+            visit(ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.While ast) {
+            respan(ast);
+            visit(ast.getCondition());
+            visit(ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Return ast) {
+            respan(ast);
+            visit(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Error ast) {
+            respan(ast);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Literal ast) {
+            respan(ast);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Group ast) {
+            respan(ast);
+            visit(ast.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Binary ast) {
+            respan(ast);
+            visit(ast.getLeft());
+            visit(ast.getRight());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Access ast) {
+            respan(ast);
+            visit(ast.getReceiver());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Function ast) {
+            respan(ast);
+            visit(ast.getReceiver());
+            visit(ast.getArguments());
+            return null;
+        }
+
+    }
+
+}
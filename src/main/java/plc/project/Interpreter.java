@@ -168,6 +168,11 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         throw new Interpreter.Return(visit(ast.getValue()));
     }
 
+    @Override
+    public Environment.PlcObject visit(Ast.Statement.Error ast) {
+        throw ast.getException();
+    }
+
     @Override
     public Environment.PlcObject visit(Ast.Expression.Literal ast) {
         if (ast.getLiteral() == null) {
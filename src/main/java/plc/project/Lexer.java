@@ -1,6 +1,23 @@
 package plc.project;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * The lexer works through three main functions:
@@ -13,14 +30,119 @@ import java.util.List;
  * should throw a {@link ParseException} with an index at the invalid character.
  *
  * The {@link #peek(String...)} and {@link #match(String...)} functions are
- * helpers you need to use, they will make the implementation easier.
+ * regex helpers for callers outside the lexer. The lexer itself matches tokens
+ * with a {@link LexerAutomaton}, which does one table lookup per character.
  */
-public final class Lexer {
+public final class Lexer implements Iterator<Token> {
 
-    private final CharStream chars;
+    /**
+     * The minimum number of characters in a chunk for {@link #lexParallel}, as
+     * smaller chunks are not worth the overhead of a task.
+     */
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+
+    /**
+     * The number of digits which always fit in a {@code long}, so numeric
+     * literals with at most this many digits are decoded without overflow and
+     * without creating a {@code String}.
+     */
+    private static final int LONG_DIGITS = 18;
+
+    /**
+     * The number of names a symbol table can hold before {@link #reset} clears
+     * it, which bounds the memory of a lexer that is reused indefinitely.
+     */
+    private static final int MAX_RETAINED_SYMBOLS = 1 << 12;
+
+    private static final ThreadLocal<Lexer> POOL = ThreadLocal.withInitial(() -> new Lexer(""));
+
+    private CharStream chars;
+    private final SymbolTable symbols;
+    private TokenBuffer buffer = null; // the last buffer, which is reused after a reset
 
     public Lexer(String input) {
-        chars = new CharStream(input);
+        this(input, new SymbolTable());
+    }
+
+    /**
+     * Creates a lexer which interns identifiers into the given symbol table,
+     * so ids and names are shared with other lexers using the same table.
+     */
+    public Lexer(String input, SymbolTable symbols) {
+        this(new StringCharStream(input), symbols);
+    }
+
+    private Lexer(CharStream chars, SymbolTable symbols) {
+        this.chars = chars;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Creates a lexer which reads the input incrementally from the given
+     * reader. Tokens are produced on demand by {@link #next()}, so only the
+     * current token needs to be held in memory.
+     */
+    public Lexer(Reader input) {
+        this(new ReaderCharStream(input), new SymbolTable());
+    }
+
+    /**
+     * Creates a lexer over the contents of the given file, which is memory
+     * mapped instead of being read into a string. See {@link
+     * ByteBufferCharStream#open(Path)} for details on the encoding.
+     */
+    public Lexer(Path path) throws IOException {
+        this(ByteBufferCharStream.open(path), new SymbolTable());
+    }
+
+    /**
+     * Creates a lexer over UTF-8 bytes, which are lexed directly instead of
+     * being decoded into a string. See {@link Utf8CharStream#of(byte[])} for
+     * details on the encoding.
+     */
+    public Lexer(byte[] input) {
+        this(Utf8CharStream.of(input), new SymbolTable());
+    }
+
+    /**
+     * Returns this thread's lexer, reset to the given input with {@link
+     * #reset(CharSequence)}. The same lexer is returned by every call on a
+     * thread, so it (and any buffer it lexed) is only valid until the next
+     * call on that thread.
+     */
+    public static Lexer pooled(CharSequence input) {
+        return POOL.get().reset(input);
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Resets this lexer to the start of the given input, so many small inputs
+     * can be lexed without creating a lexer for each. The char stream, symbol
+     * table, and token buffer of the previous input are reused, which means
+     * a buffer returned by {@link #lexBuffer()} must not be used after the
+     * lexer is reset.
+     *
+     * Names stay in the symbol table so recurring identifiers are not created
+     * again, until there are more than {@link #MAX_RETAINED_SYMBOLS} and the
+     * table is cleared back to the keywords.
+     */
+    public Lexer reset(CharSequence input) {
+        String string = input.toString();
+        if (chars instanceof StringCharStream) {
+            ((StringCharStream) chars).reset(string);
+        } else {
+            chars = new StringCharStream(string);
+        }
+        if (symbols.size() > MAX_RETAINED_SYMBOLS) {
+            symbols.clear();
+        }
+        if (buffer != null) {
+            buffer.reset(string);
+        }
+        return this;
     }
 
     /**
@@ -29,166 +151,336 @@ public final class Lexer {
      */
     public List<Token> lex() {
         List<Token> statement = new ArrayList<>();
-        while (chars.has(0)) {
-            if (peek("[ \b\n\r\t]")) {
-                chars.advance();
-                chars.skip();
-            }
-            else {
-                statement.add(lexToken());
-            }
+        while (hasNext()) {
+            statement.add(chars.emit(scanToken(), symbols));
         }
         return statement;
     }
 
     /**
-     * This method determines the type of the next token, delegating to the
-     * appropriate lex method. As such, it is best for this method to not change
-     * the state of the char stream (thus, use peek not match).
+     * Lexes the input after an edit, reusing the tokens lexed from the input
+     * before the edit. The edit replaced {@code removed} characters at {@code
+     * offset} with {@code inserted} characters, and this lexer is over the
+     * input after the edit. The result is the same as {@link #lex()}.
+     *
+     * A token only depends on its own characters and the character after it
+     * (for example, to end an identifier), and lexing is independent of the
+     * previous tokens. Previous tokens ending before the edit are reused, and
+     * lexing restarts after them. Once the next token starts after the edit
+     * at the (shifted) start of a previous token, the rest of the input is the
+     * same, so the remaining tokens are reused with their indices shifted.
      *
-     * The next character should start a valid token since whitespace is handled
-     * by {@link #lex()}
+     * For symbol ids to be consistent with the previous tokens, this lexer
+     * should use the same {@link SymbolTable} as the one which lexed them.
      */
-    public Token lexToken() {
-        if (peek("[A-Za-z_]")) {
-            return lexIdentifier();
+    public List<Token> relex(List<Token> previous, int offset, int removed, int inserted) {
+        if (chars.getInput() == null) {
+            throw new UnsupportedOperationException("Relexing requires the input to be in memory.");
         }
-        else if (peek("[+-]", "[0-9]") || peek("[0-9]")){
-            return lexNumber();
+        int low = 0;
+        int high = previous.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Token token = previous.get(mid);
+            if (token.getIndex() + token.getLength() < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
         }
-        else if (peek("'")){
-            return lexCharacter();
+        List<Token> tokens = new ArrayList<>(previous.subList(0, low));
+        chars.seek(low == 0 ? 0 : previous.get(low - 1).getIndex() + previous.get(low - 1).getLength());
+
+        int shift = inserted - removed;
+        int next = low;
+        while (hasNext()) {
+            if (chars.index >= offset + inserted) {
+                while (next < previous.size() && previous.get(next).getIndex() + shift < chars.index) {
+                    next++;
+                }
+                if (next < previous.size() && previous.get(next).getIndex() + shift == chars.index
+                        && previous.get(next).getIndex() >= offset + removed) {
+                    for (Token token : previous.subList(next, previous.size())) {
+                        tokens.add(token.withIndex(token.getIndex() + shift));
+                    }
+                    return tokens;
+                }
+            }
+            tokens.add(chars.emit(scanToken(), symbols));
         }
-        else if (peek("\"") || peek("\\\\", "\"")){
-            return lexString();
+        return tokens;
+    }
+
+    /**
+     * Lexes the input in the same way as {@link #lex()}, but splits it into
+     * chunks which are lexed concurrently on the given pool.
+     *
+     * Chunks are split at line breaks, which are always between tokens as
+     * no token (including string and character literals) can contain one.
+     * Any lookahead at the end of a chunk only sees the line break, which
+     * never continues a token, so each chunk produces exactly the tokens
+     * (with the same indices) as lexing the entire input. If lexing fails,
+     * the exception from the first failing chunk is thrown, which is the
+     * same exception {@link #lex()} would throw.
+     *
+     * Each chunk interns identifiers into its own symbol table, as tables are
+     * not thread-safe. The chunk tables are then merged into the given table
+     * in order, and identifiers whose id changed are copied with the new id,
+     * keeping their literal.
+     */
+    public static List<Token> lexParallel(String input, ForkJoinPool pool, SymbolTable symbols) {
+        int size = Math.max(input.length() / (pool.getParallelism() * 4), MIN_CHUNK_SIZE);
+        List<Lexer> lexers = new ArrayList<>();
+        List<Callable<List<Token>>> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < input.length()) {
+            int end = start + size < input.length() ? input.indexOf('\n', start + size) : -1;
+            Lexer lexer = new Lexer(new StringCharStream(input, start, end == -1 ? input.length() : end), new SymbolTable());
+            lexers.add(lexer);
+            chunks.add(lexer::lex);
+            start = end == -1 ? input.length() : end;
         }
-        else {
-            return lexOperator();
+        List<Future<List<Token>>> results = pool.invokeAll(chunks);
+        List<Token> tokens = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                SymbolTable chunkSymbols = lexers.get(i).symbols;
+                int[] ids = new int[chunkSymbols.size()];
+                for (int id = 0; id < ids.length; id++) {
+                    ids[id] = symbols.intern(chunkSymbols.getName(id));
+                }
+                for (Token token : results.get(i).get()) {
+                    int symbol = token.getSymbol();
+                    if (symbol != SymbolTable.NONE && ids[symbol] != symbol) {
+                        token = token.withSymbol(ids[symbol]);
+                    }
+                    tokens.add(token);
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
         }
+        return tokens;
     }
 
-    public Token lexIdentifier() {
-        if(!peek("[A-Za-z_]")){
-            throw new UnsupportedOperationException();
+    public static List<Token> lexParallel(String input, ForkJoinPool pool) {
+        return lexParallel(input, pool, new SymbolTable());
+    }
+
+    /**
+     * Lexes the input in the same way as {@link #lex()}, but stores the tokens
+     * in a {@link TokenBuffer} instead of creating a {@link Token} for each.
+     * The input must be in memory, as the buffer refers back to it.
+     *
+     * After a {@link #reset(CharSequence)}, the buffer of the previous input
+     * is cleared and reused instead of creating a new one.
+     */
+    public TokenBuffer lexBuffer() {
+        if (chars.getInput() == null) {
+            throw new UnsupportedOperationException("A token buffer requires the input to be in memory.");
+        }
+        if (buffer == null || buffer.size() != 0 || buffer.getSource() != chars.getInput()) {
+            buffer = new TokenBuffer(chars.getInput(), symbols);
         }
-        match("[A-Za-z_]");
-        while(peek("[A-Za-z0-9_-]")){
-                match("[A-Za-z0-9_-]");
+        while (hasNext()) {
+            chars.emit(scanToken(), buffer);
         }
-        return chars.emit(Token.Type.IDENTIFIER);
+        return buffer;
     }
 
-    public Token lexNumber() {
-        // Track if the number starts with a negative sign
-        boolean isNegative = false;
+    /**
+     * Skips any whitespace and returns true if there is another token in the
+     * input.
+     */
+    @Override
+    public boolean hasNext() {
+        chars.skipWhitespace();
+        return chars.has(0);
+    }
 
-        if (peek("[+-]")) {
-            isNegative = peek("-");
-            match("[+-]");
+    /**
+     * Lexes the next token of the input, throwing a {@link ParseException} if
+     * it is invalid. Together with {@link #hasNext()}, this allows tokens to be
+     * pulled one at a time instead of all at once with {@link #lex()}.
+     */
+    @Override
+    public Token next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
         }
+        return chars.emit(scanToken(), symbols);
+    }
 
-        if (peek("0")) {
-            match("0");
+    /**
+     * Lexes the next token. The next character should start a valid token
+     * since whitespace is handled by {@link #lex()}
+     */
+    public Token lexToken() {
+        return chars.emit(scanToken(), symbols);
+    }
 
-            if (!peek("[0-9]")) {
-                return chars.emit(Token.Type.INTEGER);
-            }
+    public Token lexIdentifier() {
+        return lexToken(Token.Type.IDENTIFIER);
+    }
 
-            if (peek("[0-9]") && !peek("0", "\\.")) {
-                throw new ParseException("Leading 0", chars.index);
-            }
+    public Token lexNumber() {
+        int start = chars.index;
+        Token.Type type = scanToken();
+        if (type != Token.Type.INTEGER && type != Token.Type.DECIMAL) {
+            throw new ParseException("Expected number", start);
         }
+        return chars.emit(type, symbols);
+    }
 
-        // Match remaining digits
-        while (match("[0-9]")) ;
+    public Token lexCharacter() {
+        return lexToken(Token.Type.CHARACTER);
+    }
 
-        // Check for decimal
-        if (peek("\\.")) {
-            match("\\.");
-            if (peek("[0-9]")) {
-                while (match("[0-9]")) ;
-                return chars.emit(Token.Type.DECIMAL);
-            } else {
-                throw new ParseException("Missing digits after decimal", chars.index);
-            }
-        }
-        return chars.emit(Token.Type.INTEGER);
+    public Token lexString() {
+        return lexToken(Token.Type.STRING);
     }
 
-    public Token lexCharacter() {
-        match("'");
-        if (peek("'")){
-            throw new ParseException("Missing character", chars.index);
+    public Token lexOperator() {
+        return lexToken(Token.Type.OPERATOR);
+    }
+
+    public void lexEscape() {
+        if (chars.has(0) && chars.get(0) == '\\') {
+            chars.advance();
+            chars.skip();
         }
-        if (peek("\\\\")){
-            if (peek("\\\\", "[\\\\'\"bnrt]"))
-                match("\\\\", "[\\\\'\"bnrt]");
-            else {
-                throw new ParseException("Incorrect Escape", chars.index);
-            }
+        else {
+            throw new ParseException("Incorrect Escape", chars.index);
         }
-        else { match("[^'\\\\\\n\\r]");}
-        if (peek("'")) {
-            match("'");
-            return chars.emit(Token.Type.CHARACTER);
+    }
+
+    /**
+     * Lexes the next token, which must be of the given type.
+     */
+    private Token lexToken(Token.Type expected) {
+        int start = chars.index;
+        Token.Type type = scanToken();
+        if (type != expected) {
+            throw new ParseException("Expected " + expected.name().toLowerCase(), start);
         }
-        throw new ParseException("Missing closing single quote", chars.index);
+        return chars.emit(type, symbols);
     }
 
-    public Token lexString() {
-        if (peek("\"")) {
-            match("\"");
+    /**
+     * Matches the next token with the {@link LexerAutomaton}, returning its
+     * type. The caller is responsible for emitting the matched characters from
+     * the {@link CharStream}.
+     */
+    private Token.Type scanToken() {
+        int state = chars.scan(LexerAutomaton.START);
+        Token.Type type = LexerAutomaton.getAccept(state);
+        if (type == null) {
+            throw new ParseException(LexerAutomaton.getError(state), chars.index - LexerAutomaton.getOffset(state));
         }
-        if (peek("\\\\","\"")) {
-            match("\\\\","\"");
+        return type;
+    }
+
+    /**
+     * Decodes the value of a literal of the given type made of the characters
+     * of the source between the start (inclusive) and end (exclusive) indices,
+     * returning null for identifiers and operators. The characters must have
+     * been matched by the lexer as a token of that type.
+     */
+    public static Object decode(Token.Type type, CharSequence source, int start, int end) {
+        switch (type) {
+            case INTEGER:
+                return decodeInteger(source, start, end);
+            case DECIMAL:
+                return decodeDecimal(source, start, end);
+            case CHARACTER:
+                return source.charAt(start + 1) == '\\'
+                        ? unescape(source.charAt(start + 2))
+                        : source.charAt(start + 1);
+            case STRING:
+                return decodeString(source, start + 1, end - 1);
+            default:
+                return null;
         }
-        while (peek(".")) {
-            if (peek("\"") || peek("\\\\","\"")){
-                break;
-            }
-            else if (peek("\\\\")) {
-                if (peek("\\\\", "[\\\\'bnrt]"))
-                    match("\\\\", "[\\\\'bnrt]");
-                else {
-                    throw new ParseException("Incorrect Escape", chars.index);
-                }
-            }
-            else  {
-                match(".");
-            }
+    }
+
+    private static BigInteger decodeInteger(CharSequence source, int start, int end) {
+        int i = source.charAt(start) == '-' || source.charAt(start) == '+' ? start + 1 : start;
+        if (end - i > LONG_DIGITS) {
+            return new BigInteger(source.subSequence(start, end).toString());
         }
-        if (peek("\"")){
-            match("\"");
+        long value = 0;
+        for (; i < end; i++) {
+            value = value * 10 + (source.charAt(i) - '0');
         }
-        else if (peek("\\\\","\"")) {
-            match("\\\\","\"");
+        return BigInteger.valueOf(source.charAt(start) == '-' ? -value : value);
+    }
+
+    private static BigDecimal decodeDecimal(CharSequence source, int start, int end) {
+        int i = source.charAt(start) == '-' || source.charAt(start) == '+' ? start + 1 : start;
+        if (end - i - 1 > LONG_DIGITS) {
+            return new BigDecimal(source.subSequence(start, end).toString());
         }
-        else {
-            throw new ParseException("Missing closing double quote", chars.index);
+        long unscaled = 0;
+        int scale = 0;
+        for (; i < end; i++) {
+            char c = source.charAt(i);
+            if (c == '.') {
+                scale = end - i - 1;
+            } else {
+                unscaled = unscaled * 10 + (c - '0');
+            }
         }
-        return chars.emit(Token.Type.STRING);
+        return BigDecimal.valueOf(source.charAt(start) == '-' ? -unscaled : unscaled, scale);
     }
 
-    public void lexEscape() {
-        if (peek("\\\\")){
-            chars.advance();
-            chars.skip();
+    /**
+     * Returns the body of a string literal with escapes resolved in a single
+     * pass. The body is shared without copying through a builder when it
+     * contains no escapes, which is the common case.
+     */
+    private static String decodeString(CharSequence source, int start, int end) {
+        int i = start;
+        while (i < end && source.charAt(i) != '\\') {
+            i++;
         }
-        else {
-            throw new ParseException("Incorrect Escape", chars.index);
+        if (i == end) {
+            return source.subSequence(start, end).toString();
         }
+        StringBuilder builder = new StringBuilder(end - start).append(source, start, i);
+        while (i < end) {
+            char c = source.charAt(i++);
+            if (c == '\\' && i < end && unescape(source.charAt(i)) != 0) {
+                builder.append(unescape(source.charAt(i++)));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
     }
 
-    public Token lexOperator() {
-        if (match("!","=") || match("=","=") || match("<","=") || match(">","=") ||
-                match("\\|","\\|") || match("&","&")) {
-            return chars.emit(Token.Type.OPERATOR);
-        }
-        else if (match("[^\\w\\s]")) {
-            return chars.emit(Token.Type.OPERATOR);
+    /**
+     * Returns the character of the escape {@code \c}, or 0 if it is not an
+     * escape.
+     */
+    private static char unescape(char c) {
+        switch (c) {
+            case 'b': return '\b';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case '\'': return '\'';
+            case '"': return '"';
+            case '\\': return '\\';
+            default: return 0;
         }
-        throw new ParseException("Not a valid Operator", chars.index);
     }
+
     /**
      * Returns true if the next sequence of characters match the given patterns,
      * which should be a regex. For example, {@code peek("a", "b", "c")} would
@@ -218,44 +510,660 @@ public final class Lexer {
     }
 
     /**
-     * A helper class maintaining the input string, current index of the char
-     * stream, and the current length of the token being matched.
+     * A helper class maintaining the input, current index of the char stream,
+     * and the current length of the token being matched.
      *
      * You should rely on peek/match for state management in nearly all cases.
      * The only field you need to access is {@link #index} for any {@link
      * ParseException} which is thrown.
+     *
+     * Implementations only need to provide access to the characters of the
+     * input, which are {@link StringCharStream} for a string already in memory
+     * and {@link ReaderCharStream} for input read incrementally.
      */
-    public static final class CharStream {
+    public static abstract class CharStream {
+
+        protected int index = 0;
+        protected int length = 0;
+
+        public abstract boolean has(int offset);
+
+        public abstract char get(int offset);
+
+        /**
+         * Returns the entire input, or {@code null} if it is not held in
+         * memory (as with a {@link ReaderCharStream}).
+         */
+        public abstract CharSequence getInput();
+
+        /**
+         * Returns the characters of the input between the start (inclusive)
+         * and end (exclusive) indices, which must be within the current token.
+         */
+        protected abstract String substring(int start, int end);
+
+        public void advance() {
+            index++;
+            length++;
+        }
+
+        public void skip() {
+            length = 0;
+        }
 
-        private final String input;
-        private int index = 0;
-        private int length = 0;
+        /**
+         * Moves to the given index, which starts the next token.
+         */
+        public void seek(int index) {
+            this.index = index;
+            skip();
+        }
+
+        /**
+         * Runs the {@link LexerAutomaton} from the given state over the
+         * following characters, advancing past each one with a transition,
+         * and returns the state it stopped in. {@link Utf8CharStream} overrides
+         * this to keep its byte position as it goes.
+         */
+        public int scan(int state) {
+            while (has(0)) {
+                int next = LexerAutomaton.next(state, get(0));
+                if (next == LexerAutomaton.STOP) {
+                    break;
+                }
+                advance();
+                state = next;
+            }
+            return state;
+        }
+
+        /**
+         * Skips all of the following whitespace, which is not part of a token.
+         */
+        public void skipWhitespace() {
+            while (has(0) && LexerAutomaton.isWhitespace(get(0))) {
+                index++;
+            }
+            skip();
+        }
+
+        public Token emit(Token.Type type) {
+            int start = index - length;
+            skip();
+            return new Token(type, substring(start, index), start);
+        }
 
-        public CharStream(String input) {
+        /**
+         * Emits a token as above, but interns identifiers into the given
+         * symbol table so they share the table's id and name. Other literals
+         * are not copied when the input is in memory, as the token refers
+         * back to the input instead.
+         */
+        public Token emit(Token.Type type, SymbolTable symbols) {
+            int start = index - length;
+            skip();
+            CharSequence input = getInput();
+            if (type != Token.Type.IDENTIFIER && input != null) {
+                return new Token(type, input, start, index, SymbolTable.NONE, decode(type, input, start, index));
+            } else if (type != Token.Type.IDENTIFIER) {
+                String literal = substring(start, index);
+                return new Token(type, literal, start, SymbolTable.NONE, decode(type, literal, 0, literal.length()));
+            }
+            int symbol = input != null ? symbols.intern(input, start, index) : symbols.intern(substring(start, index));
+            return new Token(type, symbols.getName(symbol), start, symbol);
+        }
+
+        public void emit(Token.Type type, TokenBuffer buffer) {
+            int start = index - length;
+            skip();
+            int symbol = type == Token.Type.IDENTIFIER
+                    ? buffer.getSymbols().intern(buffer.getSource(), start, index)
+                    : SymbolTable.NONE;
+            buffer.add(type, start, index - start, symbol);
+        }
+
+    }
+
+    public static final class StringCharStream extends CharStream {
+
+        private String input;
+        private int end;
+
+        public StringCharStream(String input) {
+            this(input, 0, input.length());
+        }
+
+        /**
+         * Creates a char stream over the characters of the input between the
+         * start (inclusive) and end (exclusive) indices. Token indices are
+         * still relative to the entire input.
+         */
+        public StringCharStream(String input, int start, int end) {
             this.input = input;
+            this.index = start;
+            this.end = end;
         }
 
+        /**
+         * Resets the stream to the start of a new input.
+         */
+        public void reset(String input) {
+            this.input = input;
+            this.index = 0;
+            this.length = 0;
+            this.end = input.length();
+        }
+
+        @Override
+        public String getInput() {
+            return input;
+        }
+
+        @Override
         public boolean has(int offset) {
-            return index + offset < input.length();
+            return index + offset < end;
         }
 
+        @Override
         public char get(int offset) {
             return input.charAt(index + offset);
         }
 
+        @Override
+        protected String substring(int start, int end) {
+            return input.substring(start, end);
+        }
+
+    }
+
+    /**
+     * A char stream over a {@link Reader}, which keeps a sliding window of the
+     * input starting at the current token. Characters before the token are
+     * discarded when more input is read, so memory is bounded by the largest
+     * token instead of the size of the input.
+     */
+    public static final class ReaderCharStream extends CharStream {
+
+        private final Reader reader;
+        private char[] buffer = new char[8192];
+        private int offset = 0; // index of buffer[0] in the input
+        private int limit = 0; // number of characters in the buffer
+        private boolean eof = false;
+
+        public ReaderCharStream(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            int i = index + offset - this.offset;
+            while (i >= limit && !eof) {
+                fill();
+                i = index + offset - this.offset;
+            }
+            return i < limit;
+        }
+
+        @Override
+        public char get(int offset) {
+            if (!has(offset)) {
+                throw new IndexOutOfBoundsException("Index " + (index + offset) + " is past the end of the input.");
+            }
+            return buffer[index + offset - this.offset];
+        }
+
+        @Override
+        public CharSequence getInput() {
+            return null;
+        }
+
+        @Override
+        protected String substring(int start, int end) {
+            return new String(buffer, start - offset, end - start);
+        }
+
+        /**
+         * Discards characters before the current token and reads more input,
+         * growing the buffer if the token fills all of it.
+         */
+        private void fill() {
+            int discard = index - length - offset;
+            if (discard > 0) {
+                System.arraycopy(buffer, discard, buffer, 0, limit - discard);
+                offset += discard;
+                limit -= discard;
+            }
+            if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            try {
+                int read = reader.read(buffer, limit, buffer.length - limit);
+                if (read == -1) {
+                    eof = true;
+                } else {
+                    limit += read;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+    }
+
+    /**
+     * A char stream over ASCII bytes, such as a memory mapped file, where each
+     * byte is one character. Bytes are only copied into strings for the
+     * literals of emitted tokens.
+     */
+    public static final class ByteBufferCharStream extends CharStream {
+
+        private final ByteBuffer input;
+        private final CharSequence sequence = new AsciiSequence();
+
+        /**
+         * Creates a char stream over the given buffer, from index 0 to its
+         * limit, which must only contain ASCII bytes.
+         */
+        public ByteBufferCharStream(ByteBuffer input) {
+            this.input = input;
+        }
+
+        /**
+         * Opens a char stream over the given UTF-8 file. If the file is ASCII,
+         * which is checked with a scan over the mapped bytes, it is lexed
+         * directly from the mapping. Otherwise, multibyte characters would
+         * make byte offsets differ from character indices, so the file is
+         * copied into an array for a {@link Utf8CharStream} instead.
+         */
+        public static CharStream open(Path path) throws IOException {
+            ByteBuffer bytes;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("The file " + path + " is too large to lex.");
+                }
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (isAscii(bytes)) {
+                return new ByteBufferCharStream(bytes);
+            }
+            byte[] array = new byte[bytes.limit()];
+            bytes.get(0, array);
+            return Utf8CharStream.of(array);
+        }
+
+        private static boolean isAscii(ByteBuffer bytes) {
+            int i = 0;
+            for (; i + Long.BYTES <= bytes.limit(); i += Long.BYTES) {
+                if ((bytes.getLong(i) & 0x8080808080808080L) != 0) {
+                    return false;
+                }
+            }
+            for (; i < bytes.limit(); i++) {
+                if (bytes.get(i) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            return index + offset < input.limit();
+        }
+
+        @Override
+        public char get(int offset) {
+            return (char) (input.get(index + offset) & 0xFF);
+        }
+
+        @Override
+        public CharSequence getInput() {
+            return sequence;
+        }
+
+        @Override
+        protected String substring(int start, int end) {
+            byte[] bytes = new byte[end - start];
+            input.get(start, bytes);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+
+        /**
+         * A view of the input as characters, used by {@link TokenBuffer}.
+         */
+        private final class AsciiSequence implements CharSequence {
+
+            @Override
+            public int length() {
+                return input.limit();
+            }
+
+            @Override
+            public char charAt(int index) {
+                return (char) (input.get(index) & 0xFF);
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                return substring(start, end);
+            }
+
+            @Override
+            public String toString() {
+                return substring(0, input.limit());
+            }
+
+        }
+
+    }
+
+    /**
+     * A char stream over UTF-8 bytes, which tracks both the index of the
+     * current character and its byte position. ASCII bytes are one character
+     * each and are handled first, so multibyte characters (which can only
+     * appear in literals or as single character operators) are decoded only
+     * when they are reached.
+     *
+     * Random access by character index, which is needed for {@link
+     * #getInput()} and so for every token and symbol, uses a map of the
+     * positions of multibyte characters that is built the first time it is
+     * needed. {@link #of(byte[])} already knows when the input is ASCII, in
+     * which case the map is empty from the start and indices are byte
+     * positions. Indices before the first multibyte character are also byte
+     * positions, and other lookups start from the entry of the last one, so
+     * reading the characters of a token in order does not search the map.
+     *
+     * A supplementary character is two {@code char}s, as in a string. Its
+     * high surrogate is at the position of its first byte, and its low
+     * surrogate at the position of its second byte, which is the only time
+     * a position is a continuation byte.
+     */
+    public static final class Utf8CharStream extends CharStream {
+
+        private final byte[] input;
+        private final CharSequence sequence = new Utf8Sequence();
+        private int position = 0; // byte position of index
+
+        private int[] multibyte = null; // character indices of multibyte characters
+        private int[] shifts; // extra bytes of all multibyte characters up to each one
+        private int count; // number of multibyte characters
+        private int last = 0; // the entry of the map found by the last lookup
+
+        /**
+         * Creates a char stream over the given bytes, which must be valid
+         * UTF-8.
+         */
+        public Utf8CharStream(byte[] input) {
+            this.input = input;
+        }
+
+        /**
+         * Returns a char stream over the given UTF-8 bytes. Input which is not
+         * valid is rare enough that it is decoded into a string instead, which
+         * replaces each malformed sequence.
+         */
+        public static CharStream of(byte[] input) {
+            int count = countMultibyte(input);
+            if (count < 0) {
+                return new StringCharStream(new String(input, StandardCharsets.UTF_8));
+            }
+            Utf8CharStream stream = new Utf8CharStream(input);
+            if (count == 0) {
+                // ASCII input has an empty map, so it is never built.
+                stream.multibyte = new int[0];
+                stream.shifts = new int[0];
+            }
+            return stream;
+        }
+
+        /**
+         * Returns the number of multibyte characters in the given bytes, or
+         * -1 if they are not valid UTF-8.
+         */
+        private static int countMultibyte(byte[] input) {
+            int count = 0;
+            for (int i = 0; i < input.length; i++) {
+                int b = input[i] & 0xFF;
+                if (b < 0x80) {
+                    continue;
+                } else if (b >= 0xC2 && b <= 0xDF) {
+                    if (!isContinuation(input, i + 1, 0x80, 0xBF)) {
+                        return -1;
+                    }
+                    i += 1;
+                } else if (b >= 0xE0 && b <= 0xEF) {
+                    int low = b == 0xE0 ? 0xA0 : 0x80; // overlong
+                    int high = b == 0xED ? 0x9F : 0xBF; // surrogates
+                    if (!isContinuation(input, i + 1, low, high) || !isContinuation(input, i + 2, 0x80, 0xBF)) {
+                        return -1;
+                    }
+                    i += 2;
+                } else if (b >= 0xF0 && b <= 0xF4) {
+                    int low = b == 0xF0 ? 0x90 : 0x80; // overlong
+                    int high = b == 0xF4 ? 0x8F : 0xBF; // above U+10FFFF
+                    if (!isContinuation(input, i + 1, low, high) || !isContinuation(input, i + 2, 0x80, 0xBF)
+                            || !isContinuation(input, i + 3, 0x80, 0xBF)) {
+                        return -1;
+                    }
+                    i += 3;
+                } else {
+                    return -1;
+                }
+                count++;
+            }
+            return count;
+        }
+
+        private static boolean isContinuation(byte[] input, int i, int low, int high) {
+            return i < input.length && (input[i] & 0xFF) >= low && (input[i] & 0xFF) <= high;
+        }
+
+        /**
+         * Returns the number of bytes from the position of the character
+         * starting with the given byte to the position of the next one. The
+         * high surrogate of a supplementary character is followed by its low
+         * surrogate one byte later, which is followed by the next character
+         * three bytes later.
+         */
+        private static int size(byte b) {
+            if (b >= 0) {
+                return 1;
+            } else if ((b & 0xC0) == 0x80) {
+                return 3;
+            }
+            return (b & 0xE0) == 0xC0 ? 2 : (b & 0xF0) == 0xE0 ? 3 : 1;
+        }
+
+        private char decode(int position) {
+            byte b = input[position];
+            if (b >= 0) {
+                return (char) b;
+            } else if ((b & 0xE0) == 0xC0) {
+                return (char) ((b & 0x1F) << 6 | input[position + 1] & 0x3F);
+            } else if ((b & 0xF0) == 0xE0) {
+                return (char) ((b & 0x0F) << 12 | (input[position + 1] & 0x3F) << 6 | input[position + 2] & 0x3F);
+            } else if ((b & 0xC0) == 0x80) {
+                return Character.lowSurrogate(decodeSupplementary(position - 1));
+            }
+            return Character.highSurrogate(decodeSupplementary(position));
+        }
+
+        private int decodeSupplementary(int position) {
+            return (input[position] & 0x07) << 18 | (input[position + 1] & 0x3F) << 12
+                    | (input[position + 2] & 0x3F) << 6 | input[position + 3] & 0x3F;
+        }
+
+        private int skipChars(int position, int count) {
+            for (int i = 0; i < count && position < input.length; i++) {
+                position += size(input[position]);
+            }
+            return position;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            return skipChars(position, offset) < input.length;
+        }
+
+        @Override
+        public char get(int offset) {
+            return decode(skipChars(position, offset));
+        }
+
+        @Override
         public void advance() {
-            index++;
-            length++;
+            position += size(input[position]);
+            super.advance();
         }
 
-        public void skip() {
-            length = 0;
+        @Override
+        public void seek(int index) {
+            position = toPosition(index);
+            super.seek(index);
         }
 
-        public Token emit(Token.Type type) {
-            int start = index - length;
+        @Override
+        public int scan(int state) {
+            int i = position;
+            int chars = index;
+            while (i < input.length) {
+                byte b = input[i];
+                int next = LexerAutomaton.next(state, b >= 0 ? (char) b : decode(i));
+                if (next == LexerAutomaton.STOP) {
+                    break;
+                }
+                i += size(b);
+                chars++;
+                while (next == state && i < input.length && input[i] >= 0
+                        && LexerAutomaton.next(state, (char) input[i]) == state) {
+                    i++;
+                    chars++;
+                }
+                state = next;
+            }
+            length += chars - index;
+            index = chars;
+            position = i;
+            return state;
+        }
+
+        @Override
+        public void skipWhitespace() {
+            while (position < input.length && input[position] >= 0
+                    && LexerAutomaton.isWhitespace((char) input[position])) {
+                position++;
+                index++;
+            }
             skip();
-            return new Token(type, input.substring(start, index), start);
+        }
+
+        @Override
+        public CharSequence getInput() {
+            return sequence;
+        }
+
+        @Override
+        protected String substring(int start, int end) {
+            int from = toPosition(start);
+            int to = toPosition(end);
+            if (isLowSurrogate(from) || isLowSurrogate(to)) {
+                // A surrogate pair is split, so the bytes cannot be decoded.
+                StringBuilder builder = new StringBuilder(end - start);
+                for (int i = start; i < end; i++) {
+                    builder.append(decode(toPosition(i)));
+                }
+                return builder.toString();
+            }
+            return new String(input, from, to - from, StandardCharsets.UTF_8);
+        }
+
+        private boolean isLowSurrogate(int position) {
+            return position < input.length && (input[position] & 0xC0) == 0x80;
+        }
+
+        /**
+         * Returns the byte position of the character at the given index,
+         * building the map of multibyte characters if necessary.
+         */
+        private int toPosition(int index) {
+            if (multibyte == null) {
+                buildMap();
+            }
+            if (count == 0 || index <= multibyte[0]) {
+                return index;
+            }
+            int low = last;
+            if (low > 0 && multibyte[low - 1] >= index || low < count && multibyte[low] < index) {
+                low = 0;
+                int high = count;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (multibyte[mid] < index) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                last = low;
+            }
+            return low == 0 ? index : index + shifts[low - 1];
+        }
+
+        private void buildMap() {
+            int[] multibyte = new int[16];
+            int[] shifts = new int[16];
+            int count = 0;
+            int shift = 0;
+            for (int i = 0; i < input.length; i++) {
+                if (input[i] < 0) {
+                    if (count == multibyte.length) {
+                        multibyte = Arrays.copyOf(multibyte, count * 2);
+                        shifts = Arrays.copyOf(shifts, count * 2);
+                    }
+                    if ((input[i] & 0xF8) == 0xF0) {
+                        // The characters after the low surrogate are shifted.
+                        multibyte[count] = i - shift + 1;
+                        shift += 2;
+                        i += 3;
+                    } else {
+                        int size = size(input[i]);
+                        multibyte[count] = i - shift;
+                        shift += size - 1;
+                        i += size - 1;
+                    }
+                    shifts[count++] = shift;
+                }
+            }
+            this.shifts = shifts;
+            this.count = count;
+            this.multibyte = multibyte;
+        }
+
+        private final class Utf8Sequence implements CharSequence {
+
+            @Override
+            public int length() {
+                if (multibyte == null) {
+                    buildMap();
+                }
+                return input.length - (count == 0 ? 0 : shifts[count - 1]);
+            }
+
+            @Override
+            public char charAt(int index) {
+                return decode(toPosition(index));
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                return substring(start, end);
+            }
+
+            @Override
+            public String toString() {
+                return new String(input, StandardCharsets.UTF_8);
+            }
+
         }
 
     }
@@ -0,0 +1,306 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The deterministic finite automaton used by the {@link Lexer} to match a
+ * token. Starting from {@link #START}, each character moves the automaton to
+ * the next state with a single lookup in a transition table, until there is
+ * no transition ({@link #STOP}). The state it stopped in then either accepts
+ * the characters as a token of some type or rejects them with the message
+ * and position of a {@link ParseException}.
+ *
+ * The automaton is described below by the {@link State}s of the token
+ * grammar, and is minimized when the class is loaded so equivalent states
+ * share a row of the table.
+ */
+final class LexerAutomaton {
+
+    /**
+     * Character classes, where every character in a class has the same
+     * transitions in every state. Non-ASCII characters are {@link #OTHER},
+     * except for line separators, which cannot appear in strings.
+     */
+    private static final int OTHER = 0; // any other operator character
+    private static final int LETTER = 1;
+    private static final int ESCAPE_LETTER = 2; // b, n, r, t
+    private static final int UNDERSCORE = 3;
+    private static final int MINUS = 4;
+    private static final int PLUS = 5;
+    private static final int ZERO = 6;
+    private static final int DIGIT = 7; // 1-9
+    private static final int DOT = 8;
+    private static final int QUOTE = 9;
+    private static final int DOUBLE_QUOTE = 10;
+    private static final int BACKSLASH = 11;
+    private static final int EQUALS = 12;
+    private static final int COMPARISON = 13; // !, <, >
+    private static final int PIPE = 14;
+    private static final int AMPERSAND = 15;
+    private static final int SPACE = 16; // space, \t
+    private static final int FEED = 17; // \u000B, \f
+    private static final int NEWLINE = 18; // \n, \r
+    private static final int BACKSPACE = 19;
+    private static final int LINE_SEPARATOR = 20; // \u0085, \u2028, \u2029
+    private static final int CLASS_COUNT = 21;
+
+    /**
+     * The number of bits of a class in the index of a transition, so a row
+     * of the table is a power of two.
+     */
+    private static final int CLASS_BITS = 5;
+
+    private static final int WHITESPACE = 1 << SPACE | 1 << NEWLINE | 1 << BACKSPACE;
+
+    static final int START = 0;
+    static final int STOP = -1;
+
+    private static final byte[] CLASSES = new byte[128];
+    private static final byte[] TRANSITIONS;
+    private static final byte[] ASCII_TRANSITIONS; // [state << 7 | c], without a class lookup
+    private static final Token.Type[] ACCEPTS;
+    private static final String[] ERRORS;
+    private static final int[] OFFSETS;
+
+    /**
+     * The states of the token grammar. A state either accepts the token
+     * matched so far, or rejects it with a message at the given offset
+     * before the current position.
+     */
+    private enum State {
+        START("Not a valid Operator", 0),
+        IDENTIFIER(Token.Type.IDENTIFIER),
+        SIGN(Token.Type.OPERATOR),
+        ZERO(Token.Type.INTEGER),
+        ZERO_ZERO("Leading 0", 1), // only valid before a decimal point
+        LEADING_ZERO("Leading 0", 1),
+        INTEGER(Token.Type.INTEGER),
+        DECIMAL_POINT("Missing digits after decimal", 0),
+        DECIMAL(Token.Type.DECIMAL),
+        CHARACTER_OPEN("Missing closing single quote", 0),
+        CHARACTER_EMPTY("Missing character", 1),
+        CHARACTER_ESCAPE("Incorrect Escape", 1),
+        CHARACTER_BODY("Missing closing single quote", 0),
+        CHARACTER(Token.Type.CHARACTER),
+        STRING_OPEN("Missing closing double quote", 0),
+        STRING_OPEN_ESCAPE("Incorrect Escape", 1), // an escaped quote here opens the string
+        STRING_BODY("Missing closing double quote", 0),
+        STRING_ESCAPE("Incorrect Escape", 1), // an escaped quote here closes the string
+        STRING(Token.Type.STRING),
+        BACKSLASH(Token.Type.OPERATOR), // an escaped quote here opens a string
+        EQUALS_PREFIX(Token.Type.OPERATOR),
+        PIPE(Token.Type.OPERATOR),
+        AMPERSAND(Token.Type.OPERATOR),
+        OPERATOR(Token.Type.OPERATOR);
+
+        private final Token.Type accept;
+        private final String error;
+        private final int offset;
+        private final State[] transitions = new State[CLASS_COUNT];
+
+        State(Token.Type accept) {
+            this.accept = accept;
+            this.error = null;
+            this.offset = 0;
+        }
+
+        State(String error, int offset) {
+            this.accept = null;
+            this.error = error;
+            this.offset = offset;
+        }
+
+        private void on(State next, int... classes) {
+            for (int c : classes) {
+                transitions[c] = next;
+            }
+        }
+
+    }
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            CLASSES[c] = (byte) classify(c);
+        }
+
+        int[] identifier = {LETTER, ESCAPE_LETTER, UNDERSCORE};
+        int[] digits = {ZERO, DIGIT};
+        int[] characterEscape = {ESCAPE_LETTER, QUOTE, DOUBLE_QUOTE, BACKSLASH};
+        int[] stringEscape = {ESCAPE_LETTER, QUOTE, BACKSLASH};
+        int[] stringCharacter = {OTHER, LETTER, ESCAPE_LETTER, UNDERSCORE, MINUS, PLUS, ZERO, DIGIT, DOT,
+                QUOTE, EQUALS, COMPARISON, PIPE, AMPERSAND, SPACE, FEED, BACKSPACE};
+
+        State.START.on(State.IDENTIFIER, identifier);
+        State.START.on(State.SIGN, PLUS, MINUS);
+        State.START.on(State.ZERO, ZERO);
+        State.START.on(State.INTEGER, DIGIT);
+        State.START.on(State.CHARACTER_OPEN, QUOTE);
+        State.START.on(State.STRING_OPEN, DOUBLE_QUOTE);
+        State.START.on(State.BACKSLASH, BACKSLASH);
+        State.START.on(State.EQUALS_PREFIX, EQUALS, COMPARISON);
+        State.START.on(State.PIPE, PIPE);
+        State.START.on(State.AMPERSAND, AMPERSAND);
+        State.START.on(State.OPERATOR, OTHER, DOT, BACKSPACE, LINE_SEPARATOR);
+
+        State.IDENTIFIER.on(State.IDENTIFIER, identifier);
+        State.IDENTIFIER.on(State.IDENTIFIER, ZERO, DIGIT, MINUS);
+
+        State.SIGN.on(State.ZERO, ZERO);
+        State.SIGN.on(State.INTEGER, DIGIT);
+        State.ZERO.on(State.ZERO_ZERO, ZERO);
+        State.ZERO.on(State.LEADING_ZERO, DIGIT);
+        State.ZERO_ZERO.on(State.DECIMAL_POINT, DOT);
+        State.INTEGER.on(State.INTEGER, digits);
+        State.INTEGER.on(State.DECIMAL_POINT, DOT);
+        State.DECIMAL_POINT.on(State.DECIMAL, digits);
+        State.DECIMAL.on(State.DECIMAL, digits);
+
+        State.CHARACTER_OPEN.on(State.CHARACTER_BODY, stringCharacter);
+        State.CHARACTER_OPEN.on(State.CHARACTER_BODY, DOUBLE_QUOTE, LINE_SEPARATOR);
+        State.CHARACTER_OPEN.on(State.CHARACTER_EMPTY, QUOTE);
+        State.CHARACTER_OPEN.on(State.CHARACTER_ESCAPE, BACKSLASH);
+        State.CHARACTER_ESCAPE.on(State.CHARACTER_BODY, characterEscape);
+        State.CHARACTER_BODY.on(State.CHARACTER, QUOTE);
+
+        State.STRING_OPEN.on(State.STRING_BODY, stringCharacter);
+        State.STRING_OPEN.on(State.STRING, DOUBLE_QUOTE);
+        State.STRING_OPEN.on(State.STRING_OPEN_ESCAPE, BACKSLASH);
+        State.STRING_OPEN_ESCAPE.on(State.STRING_BODY, stringEscape);
+        State.STRING_OPEN_ESCAPE.on(State.STRING_BODY, DOUBLE_QUOTE);
+        State.STRING_BODY.on(State.STRING_BODY, stringCharacter);
+        State.STRING_BODY.on(State.STRING, DOUBLE_QUOTE);
+        State.STRING_BODY.on(State.STRING_ESCAPE, BACKSLASH);
+        State.STRING_ESCAPE.on(State.STRING_BODY, stringEscape);
+        State.STRING_ESCAPE.on(State.STRING, DOUBLE_QUOTE);
+        State.BACKSLASH.on(State.STRING_BODY, DOUBLE_QUOTE);
+
+        State.EQUALS_PREFIX.on(State.OPERATOR, EQUALS);
+        State.PIPE.on(State.OPERATOR, PIPE);
+        State.AMPERSAND.on(State.OPERATOR, AMPERSAND);
+
+        int[] blocks = minimize(State.values());
+        int count = Arrays.stream(blocks).max().getAsInt() + 1;
+        TRANSITIONS = new byte[count << CLASS_BITS];
+        ACCEPTS = new Token.Type[count];
+        ERRORS = new String[count];
+        OFFSETS = new int[count];
+        Arrays.fill(TRANSITIONS, (byte) STOP);
+        for (State state : State.values()) {
+            int block = blocks[state.ordinal()];
+            ACCEPTS[block] = state.accept;
+            ERRORS[block] = state.error;
+            OFFSETS[block] = state.offset;
+            for (int c = 0; c < CLASS_COUNT; c++) {
+                State next = state.transitions[c];
+                TRANSITIONS[block << CLASS_BITS | c] = (byte) (next == null ? STOP : blocks[next.ordinal()]);
+            }
+        }
+        ASCII_TRANSITIONS = new byte[count << 7];
+        for (int state = 0; state < count; state++) {
+            for (char c = 0; c < 128; c++) {
+                ASCII_TRANSITIONS[state << 7 | c] = TRANSITIONS[state << CLASS_BITS | CLASSES[c]];
+            }
+        }
+    }
+
+    private LexerAutomaton() {}
+
+    private static int classify(char c) {
+        if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')) {
+            return c == 'b' || c == 'n' || c == 'r' || c == 't' ? ESCAPE_LETTER : LETTER;
+        } else if (c >= '1' && c <= '9') {
+            return DIGIT;
+        }
+        switch (c) {
+            case '_': return UNDERSCORE;
+            case '-': return MINUS;
+            case '+': return PLUS;
+            case '0': return ZERO;
+            case '.': return DOT;
+            case '\'': return QUOTE;
+            case '"': return DOUBLE_QUOTE;
+            case '\\': return BACKSLASH;
+            case '=': return EQUALS;
+            case '!': case '<': case '>': return COMPARISON;
+            case '|': return PIPE;
+            case '&': return AMPERSAND;
+            case ' ': case '\t': return SPACE;
+            case '\u000B': case '\f': return FEED;
+            case '\n': case '\r': return NEWLINE;
+            case '\b': return BACKSPACE;
+            case '\u0085': case '\u2028': case '\u2029': return LINE_SEPARATOR;
+            default: return OTHER;
+        }
+    }
+
+    /**
+     * Returns the block of each state after merging equivalent states, which
+     * accept or reject in the same way and whose transitions go to equivalent
+     * states for every class (Moore's algorithm). Blocks are numbered in the
+     * order of their first state, so the start state is in block 0.
+     */
+    private static int[] minimize(State[] states) {
+        int[] blocks = number(states, state -> Arrays.asList(state.accept, state.error, state.offset));
+        while (true) {
+            int[] previous = blocks;
+            int[] refined = number(states, state -> {
+                List<Object> key = new ArrayList<>();
+                key.add(previous[state.ordinal()]);
+                for (State next : state.transitions) {
+                    key.add(next == null ? STOP : previous[next.ordinal()]);
+                }
+                return key;
+            });
+            if (Arrays.stream(refined).max().getAsInt() == Arrays.stream(blocks).max().getAsInt()) {
+                return refined;
+            }
+            blocks = refined;
+        }
+    }
+
+    private static int[] number(State[] states, Function<State, List<Object>> key) {
+        Map<List<Object>, Integer> numbers = new HashMap<>();
+        int[] blocks = new int[states.length];
+        for (State state : states) {
+            blocks[state.ordinal()] = numbers.computeIfAbsent(key.apply(state), k -> numbers.size());
+        }
+        return blocks;
+    }
+
+    /**
+     * Returns the state after the given character, or {@link #STOP}.
+     */
+    static int next(int state, char c) {
+        return c < 128 ? ASCII_TRANSITIONS[state << 7 | c] : TRANSITIONS[state << CLASS_BITS | classify(c)];
+    }
+
+    static boolean isWhitespace(char c) {
+        return c < 128 && (WHITESPACE >>> CLASSES[c] & 1) != 0;
+    }
+
+    /**
+     * Returns the type of token accepted by the state, or null if it rejects
+     * the token.
+     */
+    static Token.Type getAccept(int state) {
+        return ACCEPTS[state];
+    }
+
+    static String getError(int state) {
+        return ERRORS[state];
+    }
+
+    /**
+     * Returns the number of characters before the current position where the
+     * error of the state is reported.
+     */
+    static int getOffset(int state) {
+        return OFFSETS[state];
+    }
+
+}
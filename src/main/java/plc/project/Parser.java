@@ -1,9 +1,13 @@
 package plc.project;
-import java.math.BigDecimal;
-import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * The parser takes the sequence of tokens emitted by the lexer and turns that
@@ -11,8 +15,9 @@ import java.util.Optional;
  * Tree (AST).
  *
  * The parser has a similar architecture to the lexer, just with {@link Token}s
- * instead of characters. As before, {@link #peek(Object...)} and {@link
- * #match(Object...)} are helpers to make the implementation easier.
+ * instead of characters. As before, {@link #peek(int)} and {@link #match(int)}
+ * are helpers to make the implementation easier, comparing the kind of each
+ * operator token rather than its literal.
  *
  * This type of parser is called <em>recursive descent</em>. Each rule in our
  * grammar will have it's own function, and reference to other rules correspond
@@ -20,11 +25,131 @@ import java.util.Optional;
  */
 public final class Parser {
 
+    /**
+     * The binary operators, one row for each precedence level from the most
+     * loosely to the most tightly binding. Adding an operator to a row is all
+     * that is needed to parse it.
+     */
+    private static final String[][] BINARY_OPERATORS = {
+            {"&&", "||"},
+            {"<", ">", "==", "!="},
+            {"+", "-"},
+            {"*", "/", "^"},
+    };
+
+    /**
+     * An open-addressing table of the binary operators by kind (see {@link
+     * Token#getKind()}), with the precedence (the row in {@link
+     * #BINARY_OPERATORS} plus one) and the literal of each. Empty slots have
+     * the kind {@link SymbolTable#NONE} and a precedence of 0, which is also
+     * what is found for tokens which are not binary operators.
+     */
+    private static final int[] OPERATOR_KINDS = new int[32];
+    private static final int[] OPERATOR_PRECEDENCES = new int[OPERATOR_KINDS.length];
+    private static final String[] OPERATOR_LITERALS = new String[OPERATOR_KINDS.length];
+
+    static {
+        Arrays.fill(OPERATOR_KINDS, SymbolTable.NONE);
+        for (int i = 0; i < BINARY_OPERATORS.length; i++) {
+            for (String operator : BINARY_OPERATORS[i]) {
+                int kind = Token.kind(operator, 0, operator.length());
+                int slot = getOperatorSlot(kind);
+                OPERATOR_KINDS[slot] = kind;
+                OPERATOR_PRECEDENCES[slot] = i + 1;
+                OPERATOR_LITERALS[slot] = operator;
+            }
+        }
+    }
+
+    /**
+     * The minimum number of tokens in a chunk for {@link #parseParallel}, as
+     * smaller chunks are not worth the overhead of a task.
+     */
+    private static final int MIN_CHUNK_SIZE = 1 << 12;
+
     private final TokenStream tokens;
     private boolean isForLoop = false;
+    private boolean iterative = false;
+    private boolean lazy = false;
+    private List<ParseException> diagnostics = null;
 
     public Parser(List<Token> tokens) {
-        this.tokens = new TokenStream(tokens);
+        this.tokens = new TokenStream(tokens, null, null);
+    }
+
+    public Parser(TokenBuffer tokens) {
+        this.tokens = new TokenStream(null, tokens, null);
+    }
+
+    /**
+     * Creates a parser which consumes tokens from a lexer running concurrently
+     * (see {@link TokenRing#start(Lexer, int)}), waiting only when it needs a
+     * token which has not been lexed yet.
+     */
+    public Parser(TokenRing tokens) {
+        this.tokens = new TokenStream(null, null, tokens);
+    }
+
+    private Parser(TokenStream tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Makes this parser parse statements and expressions with an explicit
+     * stack on the heap instead of recursion, so inputs nested tens of
+     * thousands of levels deep do not overflow the thread's stack. Results
+     * and {@link ParseException}s are the same as parsing recursively, which
+     * is somewhat faster for typical inputs. Returns this parser.
+     */
+    public Parser iterative() {
+        iterative = true;
+        return this;
+    }
+
+    /**
+     * Makes this parser skip over the body of each method, finding its
+     * {@code END} by counting {@code IF}, {@code FOR}, and {@code WHILE} as
+     * opening blocks, and only parse the statements the first time {@link
+     * Ast.Method#getStatements()} is called. A body is parsed from the same
+     * tokens as it would be otherwise, so the statements are the same, but a
+     * {@link ParseException} in a body is only thrown when it is parsed.
+     *
+     * Methods keep the tokens reachable until their bodies are parsed. A
+     * parser of a {@link TokenRing} cannot go back to earlier tokens, so it
+     * always parses bodies. Returns this parser.
+     */
+    public Parser lazy() {
+        lazy = true;
+        return this;
+    }
+
+    /**
+     * Makes this parser record each {@link ParseException} in {@link
+     * #getDiagnostics()} and continue instead of throwing it. A statement
+     * which cannot be parsed is replaced by an {@link Ast.Statement.Error}
+     * and the tokens are skipped to the {@code ;} which ends it, the {@code
+     * END} of its block, or a {@code DEF}, name, and {@code (} which start
+     * the next method, recording the error the normal parser gives there. A
+     * field or method whose header cannot be parsed is left out, and the
+     * tokens are skipped to the next top-level {@code LET} or {@code DEF}. A
+     * block without an {@code END} keeps the statements before it.
+     *
+     * Input which parses without errors gives the same tree as otherwise.
+     * Bodies are not parsed lazily, and an {@link #iterative()} parser only
+     * recovers at the statements directly in a method body. A lexer error
+     * from a {@link TokenRing} is still thrown. Returns this parser.
+     */
+    public Parser recovering() {
+        diagnostics = new ArrayList<>();
+        return this;
+    }
+
+    /**
+     * Returns the errors recorded by a {@link #recovering()} parser, in the
+     * order they were found, which is empty otherwise.
+     */
+    public List<ParseException> getDiagnostics() {
+        return diagnostics == null ? List.of() : diagnostics;
     }
 
     /**
@@ -34,55 +159,217 @@ public final class Parser {
         try {
             List<Ast.Field> fields = new ArrayList<>();
             List<Ast.Method> methods = new ArrayList<>();
+            int start = start();
             while (tokens.has(0)) {
-                if (peek("LET")) {
-                    fields.add(parseField());
-                } else if (peek("DEF")) {
-                    methods.add(parseMethod());
+                try {
+                    if (peekKeyword(SymbolTable.LET)) {
+                        fields.add(parseField());
+                    } else if (peekKeyword(SymbolTable.DEF)) {
+                        methods.add(parseMethod());
+                    } else {
+                        throw error("Expected field or method.");
+                    }
+                } catch (ParseException ex) {
+                    if (diagnostics == null) {
+                        throw ex;
+                    }
+                    diagnostics.add(ex);
+                    skipDeclaration();
                 }
             }
-            return new Ast.Source(fields, methods);
+            Ast.Source source = new Ast.Source(fields, methods);
+            return tokens.index == 0 ? source : span(source, start);
         } catch (ParseException ex) {
+            tokens.finish();
             throw new ParseException(ex.getMessage(), ex.getIndex());
         }
     }
 
+    /**
+     * Parses the tokens in the same way as {@link #parseSource()}, but splits
+     * them into chunks of fields and methods which are parsed concurrently on
+     * the given pool. The tokens should be a random access list, such as the
+     * result of {@link Lexer#lexParallel}.
+     *
+     * The tokens are first scanned for the end of each field (the first
+     * {@code ;}) and method (the {@code END} which balances the {@code DEF},
+     * counting {@code IF}, {@code FOR}, and {@code WHILE} as opening blocks).
+     * Each declaration is parsed with the token after it visible, which is all
+     * the lookahead the parser uses, so one which ends exactly at the scanned
+     * end is parsed as it would be by {@link #parseSource()}. If the scan
+     * fails or any declaration does not end where it was scanned to, such as
+     * on a parse error, the tokens are parsed again with {@link
+     * #parseSource()}, which gives the same result or exception as always.
+     */
+    public static Ast.Source parseParallel(List<Token> tokens, ForkJoinPool pool) throws ParseException {
+        int[] ends = scanDeclarations(tokens);
+        if (ends == null) {
+            return new Parser(tokens).parseSource();
+        }
+        int size = Math.max(tokens.size() / (pool.getParallelism() * 4), MIN_CHUNK_SIZE);
+        List<Callable<List<Ast>>> chunks = new ArrayList<>();
+        for (int from = 0; from < ends.length; ) {
+            int start = from == 0 ? 0 : ends[from - 1];
+            int to = from + 1;
+            while (to < ends.length && ends[to - 1] - start < size) {
+                to++;
+            }
+            int first = from;
+            int last = to;
+            chunks.add(() -> parseChunk(tokens, start, ends, first, last));
+            from = to;
+        }
+        List<Ast.Field> fields = new ArrayList<>();
+        List<Ast.Method> methods = new ArrayList<>();
+        for (Future<List<Ast>> result : pool.invokeAll(chunks)) {
+            List<Ast> declarations;
+            try {
+                declarations = result.get();
+            } catch (ExecutionException e) {
+                declarations = null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            if (declarations == null) {
+                return new Parser(tokens).parseSource();
+            }
+            for (Ast declaration : declarations) {
+                if (declaration instanceof Ast.Field) {
+                    fields.add((Ast.Field) declaration);
+                } else {
+                    methods.add((Ast.Method) declaration);
+                }
+            }
+        }
+        return span(new Ast.Source(fields, methods), tokens);
+    }
+
+    /**
+     * Records the span of a source parsed from all of the given tokens, as
+     * {@link #parseSource()} does, which is none if there are no tokens.
+     */
+    static Ast.Source span(Ast.Source source, List<Token> tokens) {
+        if (!tokens.isEmpty()) {
+            Token last = tokens.get(tokens.size() - 1);
+            source.setSpan(Ast.span(tokens.get(0).getIndex(), last.getIndex() + last.getLength()));
+        }
+        return source;
+    }
+
+    /**
+     * Returns the index after the last token of each top-level field and
+     * method, or null if the tokens are not a sequence of fields and methods.
+     */
+    static int[] scanDeclarations(List<Token> tokens) {
+        int[] ends = new int[16];
+        int count = 0;
+        int i = 0;
+        while (i < tokens.size()) {
+            int symbol = tokens.get(i).getSymbol();
+            if (symbol == SymbolTable.LET) {
+                while (i < tokens.size() && tokens.get(i).getKind() != ';') {
+                    i++;
+                }
+                if (i++ == tokens.size()) {
+                    return null;
+                }
+            } else if (symbol == SymbolTable.DEF) {
+                int depth = 0;
+                do {
+                    switch (tokens.get(i++).getSymbol()) {
+                        case SymbolTable.DEF: case SymbolTable.IF: case SymbolTable.FOR: case SymbolTable.WHILE:
+                            depth++;
+                            break;
+                        case SymbolTable.END:
+                            depth--;
+                            break;
+                    }
+                } while (depth > 0 && i < tokens.size());
+                if (depth > 0) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+            if (count == ends.length) {
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            ends[count++] = i;
+        }
+        return Arrays.copyOf(ends, count);
+    }
+
+    /**
+     * Parses the declarations from {@code first} (inclusive) to {@code last}
+     * (exclusive), which start at the token {@code start}, returning null if
+     * parsing fails or any declaration does not end where it was scanned to.
+     */
+    private static List<Ast> parseChunk(List<Token> tokens, int start, int[] ends, int first, int last) {
+        List<Ast> declarations = new ArrayList<>(last - first);
+        for (int i = first; i < last; i++) {
+            Ast declaration = parseDeclaration(tokens, i == first ? start : ends[i - 1], ends[i]);
+            if (declaration == null) {
+                return null;
+            }
+            declarations.add(declaration);
+        }
+        return declarations;
+    }
+
+    /**
+     * Parses the field or method from the token {@code start} to {@code end}
+     * (exclusive), with only the token after it visible, returning null if
+     * parsing fails or it does not end at {@code end}. Otherwise, the result
+     * is the same as {@link #parseSource()} gives for it.
+     */
+    static Ast parseDeclaration(List<Token> tokens, int start, int end) {
+        Parser parser = new Parser(tokens.subList(start, Math.min(end + 1, tokens.size())));
+        try {
+            Ast declaration = parser.peekKeyword(SymbolTable.LET) ? parser.parseField() : parser.parseMethod();
+            return start + parser.tokens.index == end ? declaration : null;
+        } catch (RuntimeException | StackOverflowError e) {
+            return null;
+        }
+    }
+
     /**
      * Parses the {@code field} rule. This method should only be called if the
      * next tokens start a field, aka {@code LET}.
      */
     public Ast.Field parseField() throws ParseException {
-        match("LET");
+        int start = start();
+        matchKeyword(SymbolTable.LET);
         boolean constValue = false;
-        if (peek("CONST")) {
+        if (peekKeyword(SymbolTable.CONST)) {
             constValue = true;
-            match("CONST");
+            matchKeyword(SymbolTable.CONST);
         }
 
         if (!match(Token.Type.IDENTIFIER)) {
             throw error("Expected identifier.");
         }
-        String name = tokens.get(-1).getLiteral();
+        String name = tokens.getLiteral(-1);
 
-        if (!peek(":")) {
+        if (!peek(':')) {
             throw error("Expected colon `:`." + tokens.get(0));
         }
-        match(":");
+        match(':');
         if (!match(Token.Type.IDENTIFIER)) {
             throw error("Expected type identifier.");
         }
-        String type = tokens.get(-1).getLiteral();
+        String type = tokens.getLiteral(-1);
 
         Optional<Ast.Expression> expr = Optional.empty();
-        if (match("=")) {
+        if (match('=')) {
             expr = Optional.of(parseExpression());
         }
 
-        if (!match(";")) {
+        if (!match(';')) {
             throw error("Expected semicolon.");
         }
 
-        return new Ast.Field(name, type, constValue, expr);
+        return span(new Ast.Field(name, type, constValue, expr), start);
     }
 
     /**
@@ -90,51 +377,164 @@ public final class Parser {
      * next tokens start a method, aka {@code DEF}.
      */
     public Ast.Method parseMethod() throws ParseException {
-        match("DEF");
+        int start = start();
+        matchKeyword(SymbolTable.DEF);
         if (!match(Token.Type.IDENTIFIER)) {
             throw error("Expected identifier.");
         }
-        String name = tokens.get(-1).getLiteral();
+        String name = tokens.getLiteral(-1);
 
         List<String> parameters = new ArrayList<>();
         List<String> parameterTypeNames = new ArrayList<>();
         Optional<String> returnTypeName = Optional.of("Any");
 
-        if (!match("(")) {
+        if (!match('(')) {
             throw error("Expected opening parenthesis `(`.");
         }
-        if (!peek(")")) {
+        if (!peek(')')) {
             do {
                 if (!match(Token.Type.IDENTIFIER)) {
                     throw error("Expected parameter name.");
                 }
-                parameters.add(tokens.get(-1).getLiteral());
-                match(":");
+                parameters.add(tokens.getLiteral(-1));
+                match(':');
                 if (!match(Token.Type.IDENTIFIER)){
                     throw error("Expected parameter type");
                 }
-                parameterTypeNames.add(tokens.get(-1).getLiteral());
-            } while (match(","));
+                parameterTypeNames.add(tokens.getLiteral(-1));
+            } while (match(','));
         }
-        if (!match(")")) {
+        if (!match(')')) {
             throw error("Expected closing parenthesis `)`.");
         }
-        if (match(":")) {
+        if (match(':')) {
             match(Token.Type.IDENTIFIER);
-            returnTypeName = Optional.of(tokens.get(-1).getLiteral());
+            returnTypeName = Optional.of(tokens.getLiteral(-1));
         }
-        if (!match("DO")) {
+        if (!matchKeyword(SymbolTable.DO)) {
             throw error("Expected DO.");
         }
+        if (lazy && tokens.ring == null && diagnostics == null) {
+            int body = tokens.index;
+            // A declaration can only follow the END if it was skipped to correctly.
+            if (skipBlock() && (!tokens.has(0) || peekKeyword(SymbolTable.LET) || peekKeyword(SymbolTable.DEF))) {
+                int end = tokens.index;
+                return span(new Ast.Method(name, parameters, parameterTypeNames, returnTypeName, () -> parseBody(body, end)), start);
+            }
+            // Without an END, or one that can be trusted, parse the body now.
+            tokens.index = body;
+        }
+        List<Ast.Statement> statements = parseMethodBody();
+
+        return span(new Ast.Method(name, parameters, parameterTypeNames, returnTypeName, statements), start);
+    }
+
+    /**
+     * Parses the statements of a method body through the {@code END}.
+     */
+    private List<Ast.Statement> parseMethodBody() throws ParseException {
         List<Ast.Statement> statements = new ArrayList<>();
-        while (!match("END") && tokens.has(0)) {
-            statements.add(parseStatement());
+        while (!matchKeyword(SymbolTable.END)) {
+            if (isUnclosed()) {
+                missingEnd(error("Missing END."));
+                break;
+            }
+            statements.add(parseBlockStatement());
         }
-        if (!tokens.get(-1).getLiteral().equals("END")) {
-            throw error("Missing END.");
+        return statements;
+    }
+
+    /**
+     * Advances past the {@code END} which closes the current block, returning
+     * false if there is none or the block cannot be skipped safely. Keywords
+     * only open or close a block where {@link #parseStatement()} dispatches
+     * on them, which is after {@code DO}, {@code ELSE}, {@code END}, {@code
+     * ;}, or the {@code )} which closes a {@code FOR} header, so a keyword
+     * used as a name (as in {@code LET IF;}) is not counted. In a {@code FOR}
+     * header, the parentheses are counted and only the {@code ;} before the
+     * increment starts a statement, so a name after the first {@code ;} (as
+     * in {@code FOR (i = 0; END < 3; ...)}) is not counted either. A block
+     * statement inside a header or a header without {@code (} is left to
+     * the eager parser.
+     */
+    private boolean skipBlock() {
+        int depth = 1;
+        boolean statement = true;
+        boolean header = false;
+        int parentheses = 0;
+        int semicolons = 0;
+        while (tokens.has(0)) {
+            int symbol = tokens.getSymbol(0);
+            int kind = tokens.getKind(0);
+            if (header && parentheses == 0) {
+                if (kind != '(') {
+                    return false;
+                }
+                parentheses = 1;
+                semicolons = 0;
+                statement = true;
+                tokens.advance();
+                continue;
+            }
+            if (statement) {
+                switch (symbol) {
+                    case SymbolTable.IF: case SymbolTable.FOR: case SymbolTable.WHILE:
+                        if (header) {
+                            return false;
+                        }
+                        header = symbol == SymbolTable.FOR;
+                        depth++;
+                        break;
+                    case SymbolTable.END:
+                        if (header) {
+                            return false;
+                        }
+                        depth--;
+                        break;
+                }
+            }
+            if (header && parentheses > 0) {
+                if (kind == '(') {
+                    parentheses++;
+                } else if (kind == ')') {
+                    parentheses--;
+                } else if (kind == ';' && parentheses == 1) {
+                    semicolons++;
+                }
+                header = parentheses > 0;
+                statement = !header || kind == ';' && parentheses == 1 && semicolons != 1;
+            } else if (!header) {
+                statement = symbol == SymbolTable.DO || symbol == SymbolTable.ELSE || symbol == SymbolTable.END || kind == ';';
+            } else {
+                statement = false;
+            }
+            tokens.advance();
+            if (depth == 0) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        return new Ast.Method(name, parameters, parameterTypeNames, returnTypeName, statements);    }
+    /**
+     * Parses a method body skipped by {@link #skipBlock()}, from the token
+     * {@code start} to {@code end} (exclusive), with a new parser of the same
+     * tokens. The skip follows {@link #parseStatement()} and must be
+     * followed by a declaration, so the statements should always end there.
+     * If they do not, the following declarations were parsed from the wrong
+     * token, so this throws rather than returning statements which differ
+     * from those parsed without skipping.
+     */
+    private List<Ast.Statement> parseBody(int start, int end) throws ParseException {
+        Parser parser = new Parser(new TokenStream(tokens.tokens, tokens.buffer, null));
+        parser.iterative = iterative;
+        parser.tokens.index = start;
+        List<Ast.Statement> statements = parser.parseMethodBody();
+        if (parser.tokens.index != end) {
+            throw new ParseException("Method body does not end at the skipped END.", parser.tokens.getIndex(-1));
+        }
+        return statements;
+    }
 
     /**
      * Parses the {@code statement} rule and delegates to the necessary method.
@@ -142,29 +542,173 @@ public final class Parser {
      * statement, then it is an expression/assignment statement.
      */
     public Ast.Statement parseStatement() throws ParseException {
-        if (peek("LET")) {
-            return parseDeclarationStatement();
-        } else if (peek("IF")) {
-            return parseIfStatement();
-        } else if (peek("FOR")) {
-            return parseForStatement();
-        } else if (peek("WHILE")) {
-            return parseWhileStatement();
-        } else if (peek("RETURN")) {
-            return parseReturnStatement();
+        if (iterative) {
+            return (Ast.Statement) run(statementFrame());
+        }
+        switch (tokens.has(0) ? tokens.getSymbol(0) : SymbolTable.NONE) {
+            case SymbolTable.LET:
+                return parseDeclarationStatement();
+            case SymbolTable.IF:
+                return parseIfStatement();
+            case SymbolTable.FOR:
+                return parseForStatement();
+            case SymbolTable.WHILE:
+                return parseWhileStatement();
+            case SymbolTable.RETURN:
+                return parseReturnStatement();
+        }
+        int start = start();
+        Ast.Expression ex = parseExpression();
+        Ast.Statement statement;
+        if (match('=')) {
+            Ast.Expression temp = parseExpression();
+            statement = new Ast.Statement.Assignment(ex, temp);
         } else {
-            Ast.Expression ex = parseExpression();
-            Ast.Statement statement;
-            if (match("=")) {
-                Ast.Expression temp = parseExpression();
-                statement = new Ast.Statement.Assignment(ex, temp);
-            } else {
-                statement =  new Ast.Statement.Expression(ex);
+            statement =  new Ast.Statement.Expression(ex);
+        }
+        if (!match(';') && !isForLoop) {
+            throw error("Expected semicolon `;`");
+        }
+        return span(statement, start);
+    }
+
+    /**
+     * Parses a statement in a block. When recovering, an error is recorded
+     * and the statement is replaced by an {@link Ast.Statement.Error}, after
+     * skipping the rest of it with {@link #skipStatement(int, int)}.
+     */
+    private Ast.Statement parseBlockStatement() throws ParseException {
+        if (diagnostics == null) {
+            return parseStatement();
+        }
+        int start = tokens.index;
+        int offset = tokens.getIndex(0);
+        int symbol = tokens.getSymbol(0);
+        try {
+            return parseStatement();
+        } catch (ParseException ex) {
+            isForLoop = false;
+            diagnostics.add(ex);
+            boolean block = symbol == SymbolTable.IF || symbol == SymbolTable.FOR || symbol == SymbolTable.WHILE;
+            skipStatement(start, block ? 1 : 0);
+            Ast.Statement.Error error = new Ast.Statement.Error(ex);
+            error.setSpan(Ast.span(offset, Math.max(offset, tokens.getEnd(-1))));
+            return error;
+        }
+    }
+
+    /**
+     * Returns true if the block being parsed ends here without an {@code
+     * END}, because the tokens ran out or, when recovering, a method starts.
+     */
+    private boolean isUnclosed() {
+        return !tokens.has(0) || diagnostics != null && peekMethod();
+    }
+
+    /**
+     * Throws, or when recovering records, the error for a block without an
+     * {@code END}. As always, a block which runs out of tokens right after
+     * an {@code END} (which closed an inner block) is not an error. A block
+     * which ends at a method records the error the normal parser throws
+     * there instead, so the first error recorded is always the one thrown
+     * without recovering.
+     */
+    private void missingEnd(ParseException exception) throws ParseException {
+        if (tokens.has(0)) {
+            // Recovering at a method, which the normal parser parses as an
+            // expression statement of DEF that fails at the method's name.
+            diagnostics.add(new ParseException("Expected semicolon `;`", tokens.getIndex(1)));
+        } else if (tokens.getSymbol(-1) != SymbolTable.END) {
+            if (diagnostics == null) {
+                throw exception;
             }
-            if (!match(";") && !isForLoop) {
-                throw error("Expected semicolon `;`");
+            diagnostics.add(exception);
+        }
+    }
+
+    /**
+     * Returns true if the next tokens start a method, aka {@code DEF}, an
+     * identifier, and {@code (}, which is never a valid statement.
+     */
+    private boolean peekMethod() {
+        return peekKeyword(SymbolTable.DEF) && tokens.has(2) && tokens.getType(1) == Token.Type.IDENTIFIER
+                && tokens.getKind(2) == '(';
+    }
+
+    /**
+     * Skips the rest of a statement which failed to parse, through the
+     * {@code ;} which ends it or the {@code END} which closes the given
+     * depth of blocks it opened, stopping before an {@code END} or {@code
+     * ELSE} of the enclosing block or a method. Keywords are counted after
+     * {@code DO}, {@code ELSE}, {@code END}, {@code ;}, or {@code )}, which
+     * approximates {@link #skipBlock()} without following {@code FOR}
+     * headers, and the first token skipped is taken to be where a statement
+     * can start.
+     */
+    private void skipStatement(int start, int depth) {
+        boolean statement = true;
+        while (tokens.has(0) && !peekMethod()) {
+            int symbol = tokens.getSymbol(0);
+            if (depth == 0 && tokens.getKind(0) == ';') {
+                tokens.advance();
+                return;
+            }
+            if (statement) {
+                switch (symbol) {
+                    case SymbolTable.IF: case SymbolTable.FOR: case SymbolTable.WHILE:
+                        depth++;
+                        break;
+                    case SymbolTable.END:
+                        if (depth == 0) {
+                            return;
+                        } else if (--depth == 0) {
+                            tokens.advance();
+                            return;
+                        }
+                        break;
+                    case SymbolTable.ELSE:
+                        // An ELSE which the statement failed at is skipped, so a
+                        // block which is not an IF always makes progress.
+                        if (depth == 0 && tokens.index != start) {
+                            return;
+                        }
+                        break;
+                }
             }
-            return statement;
+            statement = symbol == SymbolTable.DO || symbol == SymbolTable.ELSE || symbol == SymbolTable.END
+                    || tokens.getKind(0) == ';' || tokens.getKind(0) == ')';
+            tokens.advance();
+        }
+    }
+
+    /**
+     * Skips the rest of a field or method which failed to parse, up to the
+     * next {@code LET} or method outside of a method body. The first {@code
+     * DO} outside of a body opens one, and the blocks in it are counted as
+     * in {@link #skipStatement(int, int)}.
+     */
+    private void skipDeclaration() {
+        int depth = 0;
+        boolean statement = false;
+        while (tokens.has(0) && !peekMethod()) {
+            int symbol = tokens.getSymbol(0);
+            if (depth == 0 && symbol == SymbolTable.LET) {
+                return;
+            } else if (depth == 0 && symbol == SymbolTable.DO) {
+                depth++;
+            } else if (statement) {
+                switch (symbol) {
+                    case SymbolTable.IF: case SymbolTable.FOR: case SymbolTable.WHILE:
+                        depth++;
+                        break;
+                    case SymbolTable.END:
+                        depth = Math.max(depth - 1, 0);
+                        break;
+                }
+            }
+            statement = symbol == SymbolTable.DO || symbol == SymbolTable.ELSE || symbol == SymbolTable.END
+                    || tokens.getKind(0) == ';' || tokens.getKind(0) == ')';
+            tokens.advance();
         }
     }
 
@@ -174,24 +718,28 @@ public final class Parser {
      * statement, aka {@code LET}.
      */
     public Ast.Statement.Declaration parseDeclarationStatement() throws ParseException {
+        if (iterative) {
+            return (Ast.Statement.Declaration) run(new DeclarationFrame());
+        }
+        int start = start();
         Optional<String> typeName = Optional.empty();
-        match("LET");
+        matchKeyword(SymbolTable.LET);
         if (!match(Token.Type.IDENTIFIER)) {
             throw error("Expected identifier.");
         }
-        String name = tokens.get(-1).getLiteral();
-        if (match(":")) {
+        String name = tokens.getLiteral(-1);
+        if (match(':')) {
             match(Token.Type.IDENTIFIER);
-            typeName = Optional.of(tokens.get(-1).getLiteral());
+            typeName = Optional.of(tokens.getLiteral(-1));
         }
         Optional<Ast.Expression> temp = Optional.empty();
-        if (match("=")) {
+        if (match('=')) {
             temp = Optional.of(parseExpression());
         }
-        if (!match(";")) {
+        if (!match(';')) {
             throw error("Expected semicolon.");
         }
-        return new Ast.Statement.Declaration(name, typeName, temp);
+        return span(new Ast.Statement.Declaration(name, typeName, temp), start);
     }
 
     /**
@@ -200,29 +748,33 @@ public final class Parser {
      * {@code IF}.
      */
     public Ast.Statement.If parseIfStatement() throws ParseException {
-        match("IF");
+        if (iterative) {
+            return (Ast.Statement.If) run(new IfFrame());
+        }
+        int start = start();
+        matchKeyword(SymbolTable.IF);
         Ast.Expression condition = parseExpression();
-        if (match("DO")) {
+        if (matchKeyword(SymbolTable.DO)) {
             List<Ast.Statement> thens = new ArrayList<>();
             List<Ast.Statement> elses = new ArrayList<>();
             boolean isElse = false;
 
-            while (!match("END") && tokens.has(0)) {
-                if (match("ELSE")) {
+            while (!matchKeyword(SymbolTable.END)) {
+                if (isUnclosed()) {
+                    missingEnd(new ParseException("Missing END", tokens.getIndex(-1)));
+                    break;
+                }
+                if (matchKeyword(SymbolTable.ELSE)) {
                     isElse = true;
                 }
                 if (isElse) {
-                    elses.add(parseStatement());
+                    elses.add(parseBlockStatement());
                 } else {
-                    thens.add(parseStatement());
+                    thens.add(parseBlockStatement());
                 }
             }
 
-            if (!tokens.get(-1).getLiteral().equals("END")) {
-                throw new ParseException("Missing END", tokens.get(-1).getIndex());
-            }
-
-            return new Ast.Statement.If(condition, thens, elses);
+            return span(new Ast.Statement.If(condition, thens, elses), start);
         }
         throw error("Expected DO");
     }
@@ -233,29 +785,33 @@ public final class Parser {
      * {@code FOR}.
      */
     public Ast.Statement.For parseForStatement() throws ParseException {
-        match("FOR");
+        if (iterative) {
+            return (Ast.Statement.For) run(new ForFrame());
+        }
+        int start = start();
+        matchKeyword(SymbolTable.FOR);
         Ast.Statement stmt1;
         Ast.Statement stmt2;
-        match("(");
+        match('(');
         stmt1 = parseStatement();
 
         Ast.Expression condition = parseExpression();
-        if (!match(";")){
+        if (!match(';')){
             throw error("Expected semicolon 2.");
         }
         isForLoop = true;
         stmt2 = parseStatement();
         isForLoop = false;
-        match(")");
+        match(')');
         List<Ast.Statement> statements = new ArrayList<>();
-        while (!match("END") && tokens.has(0)) {
-            statements.add(parseStatement());
-        }
-
-        if (!tokens.get(-1).getLiteral().equals("END")) {
-            throw error("Expected END.");
+        while (!matchKeyword(SymbolTable.END)) {
+            if (isUnclosed()) {
+                missingEnd(error("Expected END."));
+                break;
+            }
+            statements.add(parseBlockStatement());
         }
-        return new Ast.Statement.For(stmt1, condition, stmt2, statements);
+        return span(new Ast.Statement.For(stmt1, condition, stmt2, statements), start);
     }
 
     /**
@@ -264,22 +820,27 @@ public final class Parser {
      * {@code WHILE}.
      */
     public Ast.Statement.While parseWhileStatement() throws ParseException {
-        match("WHILE");
+        if (iterative) {
+            return (Ast.Statement.While) run(new WhileFrame());
+        }
+        int start = start();
+        matchKeyword(SymbolTable.WHILE);
         Ast.Expression condition = parseExpression();
-        if (!match("DO")) {
+        if (!matchKeyword(SymbolTable.DO)) {
             throw error("Expected DO.");
         }
 
         List<Ast.Statement> statements = new ArrayList<>();
-        while (!match("END") && tokens.has(0)) {
-            statements.add(parseStatement());
-        }
-
-        if (!tokens.get(-1).getLiteral().equals("END")) {
-            throw error("Expected END.");
+        while (!matchKeyword(SymbolTable.END)) {
+            if (isUnclosed()) {
+                missingEnd(error("Expected END."));
+                break;
+            }
+            statements.add(parseBlockStatement());
         }
 
-        return new Ast.Statement.While(condition, statements);    }
+        return span(new Ast.Statement.While(condition, statements), start);
+    }
 
     /**
      * Parses a return statement from the {@code statement} rule. This method
@@ -287,92 +848,72 @@ public final class Parser {
      * {@code RETURN}.
      */
     public Ast.Statement.Return parseReturnStatement() throws ParseException {
-        match("RETURN");
+        if (iterative) {
+            return (Ast.Statement.Return) run(new ReturnFrame());
+        }
+        int start = start();
+        matchKeyword(SymbolTable.RETURN);
         Ast.Expression temp = parseExpression();
-        if (!match(";")) {
+        if (!match(';')) {
            throw error("Expected semicolon");
         }
-        return new Ast.Statement.Return(temp);
+        return span(new Ast.Statement.Return(temp), start);
     }
 
     /**
      * Parses the {@code expression} rule.
      */
     public Ast.Expression parseExpression() throws ParseException {
-        return parseLogicalExpression();
-    }
-
-    /**
-     * Parses the logical-expression rule, which handles "&&" and "||" operators.
-     */
-    public Ast.Expression parseLogicalExpression() throws ParseException {
-        Ast.Expression first = parseEqualityExpression();
-        while (match("&&") || match("||")) {
-            String type = tokens.get(-1).getLiteral();
-            Ast.Expression second = parseEqualityExpression();
-            first = new Ast.Expression.Binary(type, first, second);
-        }
-        return first;
-    }
-
-    /**
-     * Parses the comparison-expression rule, which handles comparison operators like "<", ">", "==", "!=".
-     */
-    public Ast.Expression parseEqualityExpression() throws ParseException {
-        Ast.Expression first = parseAdditiveExpression();
-        while (match("<") || match(">") || match("==") || match("!=")) {
-            String operator = tokens.get(-1).getLiteral();
-            Ast.Expression second = parseAdditiveExpression();
-            first = new Ast.Expression.Binary(operator, first, second);
+        if (iterative) {
+            return (Ast.Expression) run(new BinaryFrame(1));
         }
-        return first;
+        return parseBinaryExpression(1);
     }
 
     /**
-     * Parses the additive-expression rule, which handles "+" and "-" operators.
+     * Parses the binary operators of at least the given precedence (see
+     * {@link #BINARY_OPERATORS}) by precedence climbing. Operators of the same
+     * precedence are left-associative, and the right operand of each operator
+     * only takes operators which bind more tightly, which builds the same tree
+     * as a rule for each level without a call per level for each operand.
      */
-    public Ast.Expression parseAdditiveExpression() throws ParseException {
-        Ast.Expression first= parseMultiplicativeExpression();
-        while (match("+") || match("-")) {
-            String operator = tokens.get(-1).getLiteral();
-            Ast.Expression second = parseMultiplicativeExpression();
-            first= new Ast.Expression.Binary(operator, first, second);
+    private Ast.Expression parseBinaryExpression(int precedence) throws ParseException {
+        Ast.Expression first = parseSecondaryExpression();
+        while (true) {
+            int slot = getOperatorSlot(peekOperator());
+            int next = OPERATOR_PRECEDENCES[slot];
+            if (next < precedence) {
+                return first;
+            }
+            tokens.advance();
+            Ast.Expression second = parseBinaryExpression(next + 1);
+            first = span(new Ast.Expression.Binary(OPERATOR_LITERALS[slot], first, second), Ast.getStart(first.getSpan()));
         }
-        return first;
     }
 
-    /**
-     * Parses the multiplicative-expression rule, which handles "*", "/", and "^" operators.
-     */
-    public Ast.Expression parseMultiplicativeExpression() throws ParseException {
-        Ast.Expression first= parseSecondaryExpression();
-        while (match("*") || match("/") || match("^")) {
-            String operator = tokens.get(-1).getLiteral();
-            Ast.Expression second = parseSecondaryExpression();
-            first= new Ast.Expression.Binary(operator, first, second);
-        }
-        return first;
-    }
     public Ast.Expression parseSecondaryExpression() throws ParseException {
+        if (iterative) {
+            return (Ast.Expression) run(new SecondaryFrame());
+        }
         Ast.Expression first= parsePrimaryExpression();
-        while (match(".")) {
+        while (match('.')) {
             if (!match(Token.Type.IDENTIFIER)) {
                 throw error("Expected identifier after `.`.");
             }
-            String identifier = tokens.get(-1).getLiteral();
-            if (match("(")) {
+            String identifier = tokens.getLiteral(-1);
+            if (match('(')) {
                 List<Ast.Expression> arguments = new ArrayList<>();
-                if (!peek(")")) {
+                if (!peek(')')) {
                     do {
                         arguments.add(parseExpression());
-                    } while (match(","));
+                    } while (match(','));
                 }
-                if (!match(")")) {
+                if (!match(')')) {
                     throw error("Expected closing parenthesis ')'");
                 }
-                first= new Ast.Expression.Function(Optional.of(first), identifier, arguments);
+                first= span(new Ast.Expression.Function(Optional.of(first), identifier, arguments), Ast.getStart(first.getSpan()));
             } else {
-                first= new Ast.Expression.Access(Optional.of(first), identifier);
+                first= span(new Ast.Expression.Access(Optional.of(first), identifier), Ast.getStart(first.getSpan()));
             }
         }
 
@@ -384,138 +925,686 @@ public final class Parser {
      * Parses the primary-expression rule, handling literals, variables, and function calls.
      */
     public Ast.Expression parsePrimaryExpression() throws ParseException {
-        if (match("NIL")) {
-            return new Ast.Expression.Literal(null);
-        } else if (match("TRUE") || match("FALSE")) {
-            return new Ast.Expression.Literal(Boolean.valueOf(tokens.get(-1).getLiteral().toLowerCase()));
-        } else if (match(Token.Type.INTEGER)) {
-            return new Ast.Expression.Literal(new BigInteger(tokens.get(-1).getLiteral()));
-        } else if (match(Token.Type.DECIMAL)) {
-            return new Ast.Expression.Literal(new BigDecimal(tokens.get(-1).getLiteral()));
-        } else if (match(Token.Type.CHARACTER)) {
-            String literal = tokens.get(-1).getLiteral();
-            return new Ast.Expression.Literal(unescape(literal.substring(1, literal.length() - 1)).charAt(0));
-        } else if (match(Token.Type.STRING)) {
-            String literal = tokens.get(-1).getLiteral();
-            return new Ast.Expression.Literal(unescape(literal.substring(1, literal.length() - 1)));
+        if (iterative) {
+            return (Ast.Expression) run(new PrimaryFrame());
+        }
+        int start = start();
+        if (matchKeyword(SymbolTable.NIL)) {
+            return span(new Ast.Expression.Literal(null), start);
+        } else if (matchKeyword(SymbolTable.TRUE) || matchKeyword(SymbolTable.FALSE)) {
+            return span(new Ast.Expression.Literal(tokens.getSymbol(-1) == SymbolTable.TRUE), start);
+        } else if (match(Token.Type.INTEGER) || match(Token.Type.DECIMAL)
+                || match(Token.Type.CHARACTER) || match(Token.Type.STRING)) {
+            return span(new Ast.Expression.Literal(tokens.getValue(-1)), start);
         } else if (match(Token.Type.IDENTIFIER)) {
-            String name = tokens.get(-1).getLiteral();
+            String name = tokens.getLiteral(-1);
 
-            if (match("(")) {
+            if (match('(')) {
                 List<Ast.Expression> arguments = new ArrayList<>();
-                while (!match(")")) {
+                while (!match(')')) {
                     arguments.add(parseExpression());
-                    if (!peek(")")) {
-                        if (!match(",")) {
+                    if (!peek(')')) {
+                        if (!match(',')) {
                             throw error("Expected comma `,` or closing parenthesis `)`.");
-                        } else if (peek(")")) {
+                        } else if (peek(')')) {
                             throw error("Trailing comma `,` is not allowed.");
                         }
                     }
                 }
-                return new Ast.Expression.Function(Optional.empty(), name, arguments);
+                return span(new Ast.Expression.Function(Optional.empty(), name, arguments), start);
 
-            } else if (match("[")) {
+            } else if (match('[')) {
                 Ast.Expression first= parseExpression();
-                if (!match("]")) {
+                if (!match(']')) {
                     throw error("Expected closing bracket `]`.");
                 }
-                return new Ast.Expression.Access(Optional.of(first), name);
+                return span(new Ast.Expression.Access(Optional.of(first), name), start);
             } else {
-                return new Ast.Expression.Access(Optional.empty(), name);
+                return span(new Ast.Expression.Access(Optional.empty(), name), start);
             }
-        } else if (match("(")) {
+        } else if (match('(')) {
             Ast.Expression first= parseExpression();
-            if (!match(")")) {
+            if (!match(')')) {
                 throw error("Expected closing parenthesis `)`.");
             }
-            return new Ast.Expression.Group(first);
+            return span(new Ast.Expression.Group(first), start);
         } else {
             throw error(tokens.get(0) + "Invalid expression.");
         }
     }
 
     /**
-     * Helper method to throw a ParseException with a given error message.
+     * Runs the given frame and every frame it starts on an explicit stack
+     * (see {@link #iterative()}), returning the result of the given frame.
      */
-    private ParseException error(String message) {
-            return new ParseException(message, tokens.has(0) ? tokens.get(0).getIndex() : tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+    private Object run(Frame root) throws ParseException {
+        ArrayDeque<Frame> stack = new ArrayDeque<>();
+        root.start = start();
+        stack.push(root);
+        Object result = null;
+        while (true) {
+            Object value = stack.peek().step(result);
+            if (value instanceof Frame) {
+                ((Frame) value).start = start();
+                stack.push((Frame) value);
+                result = null;
+            } else {
+                stack.pop();
+                if (stack.isEmpty()) {
+                    return value;
+                }
+                result = value;
+            }
+        }
+    }
+
+    /**
+     * A rule being parsed by {@link #run(Frame)}, which is the state of one
+     * call of the recursive method for that rule. Where the method would call
+     * another rule, {@link #step(Object)} returns a frame for it instead, and
+     * is called again with the result of that frame once it finishes.
+     */
+    private abstract static class Frame {
+
+        int state = 0;
+
+        /**
+         * The offset of the token the frame started at, which starts the node
+         * it returns.
+         */
+        int start;
+
+        /**
+         * Continues parsing with the result of the last frame this one
+         * returned (null on the first step), returning either a new frame to
+         * run or the result of this rule.
+         */
+        abstract Object step(Object result) throws ParseException;
+
+    }
+
+    /**
+     * Returns a frame for the {@code statement} rule, as {@link
+     * #parseStatement()} would dispatch to.
+     */
+    private Frame statementFrame() {
+        switch (tokens.has(0) ? tokens.getSymbol(0) : SymbolTable.NONE) {
+            case SymbolTable.LET:
+                return new DeclarationFrame();
+            case SymbolTable.IF:
+                return new IfFrame();
+            case SymbolTable.FOR:
+                return new ForFrame();
+            case SymbolTable.WHILE:
+                return new WhileFrame();
+            case SymbolTable.RETURN:
+                return new ReturnFrame();
+            default:
+                return new ExpressionStatementFrame();
         }
+    }
 
     /**
-     * Unescapes a string or character literal.
+     * As {@link #parseStatement()} for an expression or assignment statement.
      */
-    private String unescape(String literal) {
-        return literal
-                .replace("\\b", "\b")
-                .replace("\\n", "\n")
-                .replace("\\r", "\r")
-                .replace("\\t", "\t")
-                .replace("\\\'", "\'")
-                .replace("\\\"", "\"")
-                .replace("\\\\", "\\");
+    private final class ExpressionStatementFrame extends Frame {
+
+        private Ast.Expression receiver;
+
+        @Override
+        Object step(Object result) throws ParseException {
+            Ast.Statement statement;
+            switch (state++) {
+                case 0:
+                    return new BinaryFrame(1);
+                case 1:
+                    receiver = (Ast.Expression) result;
+                    if (match('=')) {
+                        return new BinaryFrame(1);
+                    }
+                    statement = new Ast.Statement.Expression(receiver);
+                    break;
+                default:
+                    statement = new Ast.Statement.Assignment(receiver, (Ast.Expression) result);
+            }
+            if (!match(';') && !isForLoop) {
+                throw error("Expected semicolon `;`");
+            }
+            return span(statement, start);
+        }
+
     }
-    private boolean peek(Object... patterns) {
-        for (int i = 0; i < patterns.length; i++) {
-            if (!tokens.has(i)) {
-                return false;
-            } else if (patterns[i] instanceof Token.Type) {
-                if (patterns[i] != tokens.get(i).getType()) {
-                    return false;
+
+    /**
+     * As {@link #parseDeclarationStatement()}.
+     */
+    private final class DeclarationFrame extends Frame {
+
+        private String name;
+        private Optional<String> typeName = Optional.empty();
+
+        @Override
+        Object step(Object result) throws ParseException {
+            Optional<Ast.Expression> temp = Optional.empty();
+            if (state++ == 0) {
+                matchKeyword(SymbolTable.LET);
+                if (!match(Token.Type.IDENTIFIER)) {
+                    throw error("Expected identifier.");
                 }
-            } else if (patterns[i] instanceof String) {
-                if (!patterns[i].equals(tokens.get(i).getLiteral())) {
-                    return false;
+                name = tokens.getLiteral(-1);
+                if (match(':')) {
+                    match(Token.Type.IDENTIFIER);
+                    typeName = Optional.of(tokens.getLiteral(-1));
+                }
+                if (match('=')) {
+                    return new BinaryFrame(1);
                 }
             } else {
-                throw new AssertionError("Invalid pattern object: "
-                        + patterns[i].getClass());
+                temp = Optional.of((Ast.Expression) result);
+            }
+            if (!match(';')) {
+                throw error("Expected semicolon.");
+            }
+            return span(new Ast.Statement.Declaration(name, typeName, temp), start);
+        }
+
+    }
+
+    /**
+     * As {@link #parseIfStatement()}.
+     */
+    private final class IfFrame extends Frame {
+
+        private Ast.Expression condition;
+        private final List<Ast.Statement> thens = new ArrayList<>();
+        private final List<Ast.Statement> elses = new ArrayList<>();
+        private boolean isElse = false;
+
+        @Override
+        Object step(Object result) throws ParseException {
+            switch (state) {
+                case 0:
+                    matchKeyword(SymbolTable.IF);
+                    state = 1;
+                    return new BinaryFrame(1);
+                case 1:
+                    condition = (Ast.Expression) result;
+                    if (!matchKeyword(SymbolTable.DO)) {
+                        throw error("Expected DO");
+                    }
+                    state = 2;
+                    break;
+                default:
+                    (isElse ? elses : thens).add((Ast.Statement) result);
+            }
+            if (!matchKeyword(SymbolTable.END) && tokens.has(0)) {
+                if (matchKeyword(SymbolTable.ELSE)) {
+                    isElse = true;
+                }
+                return statementFrame();
+            }
+            if (tokens.getSymbol(-1) != SymbolTable.END) {
+                throw new ParseException("Missing END", tokens.getIndex(-1));
+            }
+            return span(new Ast.Statement.If(condition, thens, elses), start);
+        }
+
+    }
+
+    /**
+     * As {@link #parseForStatement()}.
+     */
+    private final class ForFrame extends Frame {
+
+        private Ast.Statement initialization;
+        private Ast.Expression condition;
+        private Ast.Statement increment;
+        private final List<Ast.Statement> statements = new ArrayList<>();
+
+        @Override
+        Object step(Object result) throws ParseException {
+            switch (state++) {
+                case 0:
+                    matchKeyword(SymbolTable.FOR);
+                    match('(');
+                    return statementFrame();
+                case 1:
+                    initialization = (Ast.Statement) result;
+                    return new BinaryFrame(1);
+                case 2:
+                    condition = (Ast.Expression) result;
+                    if (!match(';')) {
+                        throw error("Expected semicolon 2.");
+                    }
+                    isForLoop = true;
+                    return statementFrame();
+                case 3:
+                    isForLoop = false;
+                    increment = (Ast.Statement) result;
+                    match(')');
+                    break;
+                default:
+                    statements.add((Ast.Statement) result);
+            }
+            if (!matchKeyword(SymbolTable.END) && tokens.has(0)) {
+                return statementFrame();
+            }
+            if (tokens.getSymbol(-1) != SymbolTable.END) {
+                throw error("Expected END.");
+            }
+            return span(new Ast.Statement.For(initialization, condition, increment, statements), start);
+        }
+
+    }
+
+    /**
+     * As {@link #parseWhileStatement()}.
+     */
+    private final class WhileFrame extends Frame {
+
+        private Ast.Expression condition;
+        private final List<Ast.Statement> statements = new ArrayList<>();
+
+        @Override
+        Object step(Object result) throws ParseException {
+            switch (state++) {
+                case 0:
+                    matchKeyword(SymbolTable.WHILE);
+                    return new BinaryFrame(1);
+                case 1:
+                    condition = (Ast.Expression) result;
+                    if (!matchKeyword(SymbolTable.DO)) {
+                        throw error("Expected DO.");
+                    }
+                    break;
+                default:
+                    statements.add((Ast.Statement) result);
             }
+            if (!matchKeyword(SymbolTable.END) && tokens.has(0)) {
+                return statementFrame();
+            }
+            if (tokens.getSymbol(-1) != SymbolTable.END) {
+                throw error("Expected END.");
+            }
+            return span(new Ast.Statement.While(condition, statements), start);
         }
-        return true;
+
     }
 
     /**
-     * As in the lexer, returns {@code true} if {@link #peek(Object...)} is true
-     * and advances the token stream.
+     * As {@link #parseReturnStatement()}.
      */
-    private boolean match(Object... patterns) {
-        boolean peek = peek(patterns);
+    private final class ReturnFrame extends Frame {
+
+        @Override
+        Object step(Object result) throws ParseException {
+            if (state++ == 0) {
+                matchKeyword(SymbolTable.RETURN);
+                return new BinaryFrame(1);
+            }
+            if (!match(';')) {
+                throw error("Expected semicolon");
+            }
+            return span(new Ast.Statement.Return((Ast.Expression) result), start);
+        }
+
+    }
+
+    /**
+     * As {@link #parseBinaryExpression(int)}, where the frame for each right
+     * operand is pushed rather than called.
+     */
+    private final class BinaryFrame extends Frame {
+
+        private final int precedence;
+        private Ast.Expression first;
+        private String operator;
+
+        private BinaryFrame(int precedence) {
+            this.precedence = precedence;
+        }
+
+        @Override
+        Object step(Object result) throws ParseException {
+            if (state++ == 0) {
+                return new SecondaryFrame();
+            }
+            Ast.Expression second = (Ast.Expression) result;
+            first = operator == null ? second : span(new Ast.Expression.Binary(operator, first, second), start);
+            int slot = getOperatorSlot(peekOperator());
+            int next = OPERATOR_PRECEDENCES[slot];
+            if (next < precedence) {
+                return first;
+            }
+            tokens.advance();
+            operator = OPERATOR_LITERALS[slot];
+            return new BinaryFrame(next + 1);
+        }
+
+    }
+
+    /**
+     * As {@link #parseSecondaryExpression()}.
+     */
+    private final class SecondaryFrame extends Frame {
+
+        private Ast.Expression first;
+        private String identifier;
+        private List<Ast.Expression> arguments;
+
+        @Override
+        Object step(Object result) throws ParseException {
+            switch (state) {
+                case 0:
+                    state = 1;
+                    return new PrimaryFrame();
+                case 1:
+                    first = (Ast.Expression) result;
+                    break;
+                default:
+                    arguments.add((Ast.Expression) result);
+                    if (match(',')) {
+                        return new BinaryFrame(1);
+                    }
+                    if (!match(')')) {
+                        throw error("Expected closing parenthesis ')'");
+                    }
+                    first = span(new Ast.Expression.Function(Optional.of(first), identifier, arguments), start);
+            }
+            while (match('.')) {
+                if (!match(Token.Type.IDENTIFIER)) {
+                    throw error("Expected identifier after `.`.");
+                }
+                identifier = tokens.getLiteral(-1);
+                if (match('(')) {
+                    arguments = new ArrayList<>();
+                    if (!peek(')')) {
+                        state = 2;
+                        return new BinaryFrame(1);
+                    }
+                    if (!match(')')) {
+                        throw error("Expected closing parenthesis ')'");
+                    }
+                    first = span(new Ast.Expression.Function(Optional.of(first), identifier, arguments), start);
+                } else {
+                    first = span(new Ast.Expression.Access(Optional.of(first), identifier), start);
+                }
+            }
+            return first;
+        }
+
+    }
+
+    /**
+     * As {@link #parsePrimaryExpression()}.
+     */
+    private final class PrimaryFrame extends Frame {
+
+        private static final int ARGUMENT = 1;
+        private static final int INDEX = 2;
+        private static final int GROUP = 3;
+
+        private String name;
+        private List<Ast.Expression> arguments;
+
+        @Override
+        Object step(Object result) throws ParseException {
+            switch (state) {
+                case ARGUMENT:
+                    arguments.add((Ast.Expression) result);
+                    if (!peek(')')) {
+                        if (!match(',')) {
+                            throw error("Expected comma `,` or closing parenthesis `)`.");
+                        } else if (peek(')')) {
+                            throw error("Trailing comma `,` is not allowed.");
+                        }
+                    }
+                    return nextArgument();
+                case INDEX:
+                    if (!match(']')) {
+                        throw error("Expected closing bracket `]`.");
+                    }
+                    return span(new Ast.Expression.Access(Optional.of((Ast.Expression) result), name), start);
+                case GROUP:
+                    if (!match(')')) {
+                        throw error("Expected closing parenthesis `)`.");
+                    }
+                    return span(new Ast.Expression.Group((Ast.Expression) result), start);
+            }
+            if (matchKeyword(SymbolTable.NIL)) {
+                return span(new Ast.Expression.Literal(null), start);
+            } else if (matchKeyword(SymbolTable.TRUE) || matchKeyword(SymbolTable.FALSE)) {
+                return span(new Ast.Expression.Literal(tokens.getSymbol(-1) == SymbolTable.TRUE), start);
+            } else if (match(Token.Type.INTEGER) || match(Token.Type.DECIMAL)
+                    || match(Token.Type.CHARACTER) || match(Token.Type.STRING)) {
+                return span(new Ast.Expression.Literal(tokens.getValue(-1)), start);
+            } else if (match(Token.Type.IDENTIFIER)) {
+                name = tokens.getLiteral(-1);
+                if (match('(')) {
+                    arguments = new ArrayList<>();
+                    return nextArgument();
+                } else if (match('[')) {
+                    state = INDEX;
+                    return new BinaryFrame(1);
+                }
+                return span(new Ast.Expression.Access(Optional.empty(), name), start);
+            } else if (match('(')) {
+                state = GROUP;
+                return new BinaryFrame(1);
+            }
+            throw error(tokens.get(0) + "Invalid expression.");
+        }
+
+        private Object nextArgument() {
+            if (match(')')) {
+                return span(new Ast.Expression.Function(Optional.empty(), name, arguments), start);
+            }
+            state = ARGUMENT;
+            return new BinaryFrame(1);
+        }
+
+    }
+
+    /**
+     * Helper method to throw a ParseException with a given error message.
+     */
+    private ParseException error(String message) {
+            return new ParseException(message, tokens.has(0) ? tokens.getIndex(0) : tokens.getIndex(-1) + tokens.getLength(-1));
+        }
+
+    /**
+     * Returns the offset of the next token, which starts the node being
+     * parsed, or 0 if there is none (in which case parsing fails).
+     */
+    private int start() {
+        return tokens.has(0) ? tokens.getIndex(0) : 0;
+    }
+
+    /**
+     * Sets the span of the node from the given start offset to the end of the
+     * last token matched, which is always part of the node, returning it.
+     */
+    private <T extends Ast> T span(T ast, int start) {
+        ast.setSpan(Ast.span(start, tokens.getEnd(-1)));
+        return ast;
+    }
+
+    /**
+     * Returns true if the next token has the given type.
+     */
+    private boolean peek(Token.Type type) {
+        return tokens.has(0) && tokens.getType(0) == type;
+    }
+
+    /**
+     * As in the lexer, returns {@code true} if {@link #peek(Token.Type)} is
+     * true and advances the token stream.
+     */
+    private boolean match(Token.Type type) {
+        boolean peek = peek(type);
         if (peek) {
-            for (int i = 0; i < patterns.length; i++)
-                tokens.advance();
+            tokens.advance();
         }
         return peek;
     }
 
+    /**
+     * Returns the kind of the next token (see {@link Token#getKind()}), or
+     * {@link SymbolTable#NONE} if it is not an operator or there is none.
+     */
+    private int peekOperator() {
+        return tokens.has(0) ? tokens.getKind(0) : SymbolTable.NONE;
+    }
+
+    /**
+     * Returns true if the next token is the operator of the given kind, which
+     * for single-character operators is just the character, as in
+     * {@code peek('(')}.
+     */
+    private boolean peek(int kind) {
+        return peekOperator() == kind;
+    }
+
+    private boolean match(int kind) {
+        boolean peek = peek(kind);
+        if (peek) {
+            tokens.advance();
+        }
+        return peek;
+    }
+
+    /**
+     * Returns true if the next token is the given keyword, which is one of the
+     * ids in {@link SymbolTable}. Comparing ids avoids comparing the literal
+     * against each keyword in turn.
+     */
+    private boolean peekKeyword(int keyword) {
+        return tokens.has(0) && tokens.getSymbol(0) == keyword;
+    }
+
+    private boolean matchKeyword(int keyword) {
+        boolean peek = peekKeyword(keyword);
+        if (peek) {
+            tokens.advance();
+        }
+        return peek;
+    }
+
+    /**
+     * Returns the slot of the operator of the given kind in the operator
+     * tables, or of an empty slot (with a precedence of 0) if it is not a
+     * binary operator.
+     */
+    private static int getOperatorSlot(int kind) {
+        int mask = OPERATOR_KINDS.length - 1;
+        int slot = (kind * 0x9E3779B9 >>> 16) & mask;
+        while (OPERATOR_KINDS[slot] != kind && OPERATOR_KINDS[slot] != SymbolTable.NONE) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * The tokens being parsed, which are either a list of {@link Token}s, a
+     * {@link TokenBuffer}, or a {@link TokenRing}. Exactly one of the three is
+     * non-null.
+     */
     private static final class TokenStream {
 
         private final List<Token> tokens;
+        private final TokenBuffer buffer;
+        private final TokenRing ring;
         private int index = 0;
 
-        private TokenStream(List<Token> tokens) {
+        private TokenStream(List<Token> tokens, TokenBuffer buffer, TokenRing ring) {
             this.tokens = tokens;
+            this.buffer = buffer;
+            this.ring = ring;
         }
 
         /**
          * Returns true if there is a token at index + offset.
          */
         public boolean has(int offset) {
+            if (buffer != null) {
+                return index + offset < buffer.size();
+            } else if (ring != null) {
+                return ring.has(index + offset);
+            }
             return index + offset < tokens.size();
         }
 
         /**
-         * Gets the token at index + offset.
+         * Gets the token at index + offset. Prefer the methods below for a
+         * single property, which do not create a token from a buffer.
          */
         public Token get(int offset) {
+            if (buffer != null) {
+                return buffer.get(index + offset);
+            } else if (ring != null) {
+                return ring.get(index + offset);
+            }
             return tokens.get(index + offset);
         }
 
+        public Token.Type getType(int offset) {
+            return buffer != null ? buffer.getType(index + offset) : get(offset).getType();
+        }
+
+        public String getLiteral(int offset) {
+            return buffer != null ? buffer.getLiteral(index + offset) : get(offset).getLiteral();
+        }
+
+        public int getIndex(int offset) {
+            return buffer != null ? buffer.getIndex(index + offset) : get(offset).getIndex();
+        }
+
+        public int getLength(int offset) {
+            return buffer != null ? buffer.getLength(index + offset) : get(offset).getLength();
+        }
+
+        public int getSymbol(int offset) {
+            return buffer != null ? buffer.getSymbol(index + offset) : get(offset).getSymbol();
+        }
+
+        public Object getValue(int offset) {
+            return buffer != null ? buffer.getValue(index + offset) : get(offset).getValue();
+        }
+
         /**
-         * Advances to the next token, incrementing the index.
+         * Returns the offset after the last character of the token.
+         */
+        public int getEnd(int offset) {
+            if (buffer != null) {
+                return buffer.getIndex(index + offset) + buffer.getLength(index + offset);
+            }
+            Token token = get(offset);
+            return token.getIndex() + token.getLength();
+        }
+
+        public int getKind(int offset) {
+            return buffer != null ? buffer.getKind(index + offset) : get(offset).getKind();
+        }
+
+        /**
+         * Advances to the next token, incrementing the index. The previous
+         * token is still available, but any before it can be released.
          */
         public void advance() {
             index++;
+            if (ring != null) {
+                ring.release(index - 1);
+            }
+        }
+
+        /**
+         * Called when parsing fails. With a ring, this waits for the lexer to
+         * finish, as a lexer error takes precedence over the parse error.
+         */
+        public void finish() {
+            if (ring != null) {
+                ring.finish();
+            }
         }
 
     }
@@ -0,0 +1,157 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * Interns identifiers, giving each distinct name an {@code int} id and a
+ * single {@link String} instance shared by every token with that name.
+ *
+ * Keywords are registered first in every table, so they always have the ids
+ * of the constants below and can be compared without a table. Tokens which
+ * are not identifiers (or were created without a table and are not keywords)
+ * have the id {@link #NONE}.
+ *
+ * A table is not thread-safe, but the same table can be shared by the lexers
+ * of a compilation so ids are consistent between them.
+ */
+public final class SymbolTable {
+
+    public static final int NONE = -1;
+    public static final int LET = 0;
+    public static final int CONST = 1;
+    public static final int DEF = 2;
+    public static final int DO = 3;
+    public static final int END = 4;
+    public static final int IF = 5;
+    public static final int ELSE = 6;
+    public static final int FOR = 7;
+    public static final int WHILE = 8;
+    public static final int RETURN = 9;
+    public static final int NIL = 10;
+    public static final int TRUE = 11;
+    public static final int FALSE = 12;
+
+    private static final String[] KEYWORDS = {
+            "LET", "CONST", "DEF", "DO", "END", "IF", "ELSE", "FOR", "WHILE", "RETURN", "NIL", "TRUE", "FALSE"
+    };
+
+    /**
+     * A table with only the keywords, which is never modified after it is
+     * created and can be read by any thread.
+     */
+    private static final SymbolTable KEYWORD_TABLE = new SymbolTable();
+
+    private int[] slots = new int[64]; // id + 1 of each entry, or 0 if empty
+    private int[] hashes = new int[32];
+    private String[] names = new String[32];
+    private int size = 0;
+
+    public SymbolTable() {
+        for (String keyword : KEYWORDS) {
+            intern(keyword);
+        }
+    }
+
+    /**
+     * Returns the keyword id of the given literal, or {@link #NONE} if it is
+     * not a keyword.
+     */
+    public static int getKeyword(String literal) {
+        return KEYWORD_TABLE.lookup(literal, 0, literal.length(), hash(literal, 0, literal.length()));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every name except the keywords, keeping the capacity of the
+     * table. Ids of the removed names will be given to new names.
+     */
+    public void clear() {
+        Arrays.fill(names, KEYWORDS.length, size, null);
+        size = KEYWORDS.length;
+        Arrays.fill(slots, 0);
+        for (int i = 0; i < size; i++) {
+            insert(i);
+        }
+    }
+
+    public String getName(int id) {
+        return names[id];
+    }
+
+    public int intern(String name) {
+        return intern(name, 0, name.length());
+    }
+
+    /**
+     * Returns the id of the name made of the characters of the source between
+     * the start (inclusive) and end (exclusive) indices, adding it to the
+     * table if necessary. The characters are only copied for a new name.
+     */
+    public int intern(CharSequence source, int start, int end) {
+        int hash = hash(source, start, end);
+        int id = lookup(source, start, end, hash);
+        if (id != NONE) {
+            return id;
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        id = size++;
+        names[id] = source.subSequence(start, end).toString();
+        hashes[id] = hash;
+        if (size * 2 > slots.length) {
+            slots = new int[slots.length * 2];
+            for (int i = 0; i < size; i++) {
+                insert(i);
+            }
+        } else {
+            insert(id);
+        }
+        return id;
+    }
+
+    private int lookup(CharSequence source, int start, int end, int hash) {
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && matches(names[id], source, start, end)) {
+                return id;
+            }
+        }
+        return NONE;
+    }
+
+    private void insert(int id) {
+        int mask = slots.length - 1;
+        int slot = hashes[id] & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = id + 1;
+    }
+
+    private static boolean matches(String name, CharSequence source, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(CharSequence source, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+}
@@ -1,5 +1,7 @@
 package plc.project;
 
+import java.nio.CharBuffer;
+
 public final class Token {
 
     public enum Type {
@@ -12,38 +14,202 @@ public final class Token {
     }
 
     private final Type type;
-    private final String literal;
     private final int index;
+    private final int symbol;
+    private final Object value;
+
+    /**
+     * The characters of the literal are {@code length} characters of the
+     * source starting at {@code offset}. A token created from a string has
+     * that string as its source, and a token created by the lexer has the
+     * entire input, in which case the literal is only copied into a string
+     * when it is first requested.
+     */
+    private final CharSequence source;
+    private final int offset;
+    private final int length;
+    private String literal;
 
     public Token(Type type, String literal, int index) {
-        this.type = type;
+        this(type, literal, index, SymbolTable.getKeyword(literal));
+    }
+
+    /**
+     * Creates a token with the given id from a {@link SymbolTable}, which is
+     * used by the lexer for identifiers.
+     */
+    public Token(Type type, String literal, int index, int symbol) {
+        this(type, literal, index, symbol, null);
+    }
+
+    /**
+     * Creates a token with the given id and the value of its literal, which
+     * the lexer decodes as it scans literals (see {@link #getValue()}).
+     */
+    public Token(Type type, String literal, int index, int symbol, Object value) {
+        this(type, literal, 0, literal.length(), index, symbol, value);
         this.literal = literal;
+    }
+
+    /**
+     * Creates a token whose literal is the characters of the source between
+     * the start (inclusive) and end (exclusive) indices, without copying
+     * them. The token keeps the entire source reachable.
+     */
+    public Token(Type type, CharSequence source, int start, int end, int symbol, Object value) {
+        this(type, source, start, end - start, start, symbol, value);
+    }
+
+    private Token(Type type, CharSequence source, int offset, int length, int index, int symbol, Object value) {
+        this.type = type;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
         this.index = index;
+        this.symbol = symbol;
+        this.value = value;
+    }
+
+    /**
+     * Returns a copy of this token at a different index, which still shares
+     * the characters of this token's literal.
+     */
+    Token withIndex(int index) {
+        Token token = new Token(type, source, offset, length, index, symbol, value);
+        token.literal = literal;
+        return token;
+    }
+
+    /**
+     * Returns a copy of this token with a different id from a {@link
+     * SymbolTable}, which still shares the characters of this token's literal.
+     */
+    Token withSymbol(int symbol) {
+        Token token = new Token(type, source, offset, length, index, symbol, value);
+        token.literal = literal;
+        return token;
     }
 
     public Type getType() {
         return type;
     }
 
+    /**
+     * Returns the literal as a string, which is created from the source the
+     * first time it is requested. Prefer {@link #literalEquals(CharSequence)}
+     * and {@link #getLength()} when only comparing the literal.
+     */
     public String getLiteral() {
+        if (literal == null) {
+            literal = source.subSequence(offset, offset + length).toString();
+        }
         return literal;
     }
 
+    /**
+     * Returns the literal as a read-only view of the source, without copying
+     * the characters.
+     */
+    public CharSequence getText() {
+        return literal != null ? literal : CharBuffer.wrap(source, offset, offset + length);
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns true if the literal is equal to the characters of the given
+     * sequence, without creating the literal.
+     */
+    public boolean literalEquals(CharSequence other) {
+        return literalEquals(other, 0, other.length());
+    }
+
+    private boolean literalEquals(CharSequence other, int start, int length) {
+        if (this.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (source.charAt(offset + i) != other.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the other token has the same type and literal, wherever
+     * each of them is.
+     */
+    boolean contentEquals(Token other) {
+        return type == other.type && other.literalEquals(source, offset, length);
+    }
+
+    /**
+     * Returns a hash of the type and literal, which unlike the index does not
+     * change when the token is moved by an edit.
+     */
+    int contentHash() {
+        int hash = type.ordinal();
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + source.charAt(offset + i);
+        }
+        return hash;
+    }
+
     public int getIndex() {
         return index;
     }
 
+    /**
+     * Returns the kind of an operator token, which is its character, or for a
+     * two-character operator such as {@code &&} the first character shifted
+     * left 16 bits and combined with the second. Other tokens have the kind
+     * {@link SymbolTable#NONE}. The parser compares kinds instead of literals.
+     */
+    public int getKind() {
+        return type == Type.OPERATOR ? kind(source, offset, length) : SymbolTable.NONE;
+    }
+
+    static int kind(CharSequence source, int start, int length) {
+        if (length == 1) {
+            return source.charAt(start);
+        } else if (length == 2) {
+            return source.charAt(start) << 16 | source.charAt(start + 1);
+        }
+        return SymbolTable.NONE;
+    }
+
+    /**
+     * Returns the {@link SymbolTable} id of this token, which for keywords is
+     * one of the constants in that class, or {@link SymbolTable#NONE}.
+     */
+    public int getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Returns the value of a literal token: a {@code BigInteger},
+     * {@code BigDecimal}, {@code Character}, or unescaped {@code String}, or
+     * null for identifiers and operators. Tokens created without a value
+     * decode it from the literal on each call.
+     */
+    public Object getValue() {
+        return value != null ? value : Lexer.decode(type, source, offset, offset + length);
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Token
                 && type == ((Token) obj).type
-                && literal.equals(((Token) obj).literal)
-                && index == ((Token) obj).index;
+                && index == ((Token) obj).index
+                && ((Token) obj).literalEquals(source, offset, length);
     }
 
     @Override
     public String toString() {
-        return type + "=" + literal + "@" + index;
+        return type + "=" + getLiteral() + "@" + index;
     }
 
 }
@@ -0,0 +1,147 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * A packed list of tokens over the source text. Instead of a {@link Token}
+ * object per token, the type, start index, and length of each token are
+ * stored in parallel {@code int} arrays, and literals are only created from
+ * the source when they are requested.
+ *
+ * Buffers are produced by {@link Lexer#lexBuffer()} and can be parsed directly
+ * with {@link Parser#Parser(TokenBuffer)}.
+ */
+public final class TokenBuffer {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private CharSequence source;
+    private final SymbolTable symbols;
+    private int[] types = new int[16];
+    private int[] starts = new int[16];
+    private int[] lengths = new int[16];
+    private int[] ids = new int[16];
+    private int size = 0;
+
+    public TokenBuffer(CharSequence source, SymbolTable symbols) {
+        this.source = source;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Removes every token and sets the source of the next tokens, keeping the
+     * arrays so they can be reused without allocating.
+     */
+    public void reset(CharSequence source) {
+        this.source = source;
+        size = 0;
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Appends a token of the given type covering {@code length} characters of
+     * the source starting at {@code start}, with the given symbol id.
+     */
+    public void add(Token.Type type, int start, int length, int symbol) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+        }
+        types[size] = type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        ids[size] = symbol;
+        size++;
+    }
+
+    public Token.Type getType(int i) {
+        return TYPES[types[check(i)]];
+    }
+
+    public int getIndex(int i) {
+        return starts[check(i)];
+    }
+
+    public int getLength(int i) {
+        return lengths[check(i)];
+    }
+
+    public int getSymbol(int i) {
+        return ids[check(i)];
+    }
+
+    /**
+     * Returns the kind of the token (see {@link Token#getKind()}), which is
+     * read from the source without creating the literal.
+     */
+    public int getKind(int i) {
+        if (types[check(i)] != Token.Type.OPERATOR.ordinal()) {
+            return SymbolTable.NONE;
+        }
+        return Token.kind(source, starts[i], lengths[i]);
+    }
+
+    /**
+     * Returns the literal of the token. Identifiers share the name from the
+     * symbol table, while other literals are a new substring of the source.
+     */
+    public String getLiteral(int i) {
+        if (ids[check(i)] != SymbolTable.NONE) {
+            return symbols.getName(ids[i]);
+        }
+        return source.subSequence(starts[i], starts[i] + lengths[i]).toString();
+    }
+
+    /**
+     * Returns the decoded value of the token (see {@link Token#getValue()}),
+     * which is decoded directly from the source without creating the literal.
+     */
+    public Object getValue(int i) {
+        return Lexer.decode(getType(i), source, starts[i], starts[i] + lengths[i]);
+    }
+
+    /**
+     * Returns true if the literal of the token is equal to the given string,
+     * without creating the literal.
+     */
+    public boolean literalEquals(int i, String literal) {
+        if (lengths[check(i)] != literal.length()) {
+            return false;
+        }
+        for (int j = 0; j < literal.length(); j++) {
+            if (source.charAt(starts[i] + j) != literal.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates the {@link Token} at the given position.
+     */
+    public Token get(int i) {
+        return new Token(getType(i), getLiteral(i), getIndex(i), getSymbol(i), getValue(i));
+    }
+
+    private int check(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + size);
+        }
+        return i;
+    }
+
+}
@@ -0,0 +1,169 @@
+package plc.project;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded ring buffer of tokens between a lexer running on its own thread
+ * (the producer) and a {@link Parser} (the single consumer), so parsing can
+ * start before lexing has finished. The ring is lock-free: the producer only
+ * writes {@link #tail} and the consumer only writes {@link #head}. A side
+ * which has to wait spins briefly and then parks, setting a flag so the other
+ * side knows to unpark it.
+ *
+ * Positions are the indices of tokens in the entire token stream. The
+ * consumer keeps the token before its current position available, as the
+ * parser reads the previous token after matching it. If the consumer stops
+ * early, it should call {@link #finish()} so the lexer thread can end.
+ */
+public final class TokenRing {
+
+    private static final int SPINS = 128;
+
+    private final Token[] tokens;
+    private final int mask;
+    private volatile long head = 0; // the first position the consumer still needs
+    private volatile long tail = 0; // the position of the next token produced
+    private volatile boolean done = false;
+    private volatile boolean closed = false;
+    private volatile RuntimeException error = null;
+    private volatile Thread producer = null;
+    private volatile Thread consumer = null;
+    private volatile boolean producerWaiting = false;
+    private volatile boolean consumerWaiting = false;
+
+    private TokenRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 4) - 1) << 1;
+        tokens = new Token[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Starts lexing on a new daemon thread, publishing tokens into a ring with
+     * room for at least {@code capacity} tokens.
+     */
+    public static TokenRing start(Lexer lexer, int capacity) {
+        TokenRing ring = new TokenRing(capacity);
+        Thread thread = new Thread(() -> ring.produce(lexer), "lexer");
+        thread.setDaemon(true);
+        ring.producer = thread;
+        thread.start();
+        return ring;
+    }
+
+    private void produce(Lexer lexer) {
+        try {
+            while (lexer.hasNext()) {
+                put(lexer.next());
+            }
+        } catch (RuntimeException e) {
+            error = e;
+        } finally {
+            done = true;
+            if (consumerWaiting) {
+                LockSupport.unpark(consumer);
+            }
+        }
+    }
+
+    private void put(Token token) {
+        long position = tail;
+        for (int spins = 0; position - head >= tokens.length && !closed; spins++) {
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                producerWaiting = true;
+                if (position - head >= tokens.length && !closed) {
+                    LockSupport.park(this);
+                }
+                producerWaiting = false;
+            }
+        }
+        if (closed) {
+            return;
+        }
+        tokens[(int) position & mask] = token;
+        tail = position + 1;
+        if (consumerWaiting) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Returns true if there is a token at the given position, waiting for the
+     * lexer if necessary. If the lexer failed before reaching the position,
+     * the exception it threw is rethrown here.
+     */
+    public boolean has(long position) {
+        if (position < tail) {
+            return true;
+        }
+        consumer = Thread.currentThread();
+        for (int spins = 0; position >= tail; spins++) {
+            if (done) {
+                if (position < tail) {
+                    break;
+                } else if (error != null) {
+                    throw error;
+                }
+                return false;
+            }
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                consumerWaiting = true;
+                if (position >= tail && !done) {
+                    LockSupport.park(this);
+                }
+                consumerWaiting = false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the token at the given position, which must have been checked
+     * with {@link #has(long)} and not released.
+     */
+    public Token get(long position) {
+        if (position < head || position >= tail) {
+            throw new IndexOutOfBoundsException("Position " + position + " is not in the ring.");
+        }
+        return tokens[(int) position & mask];
+    }
+
+    /**
+     * Allows the producer to reuse the slots of all positions before the given
+     * position.
+     */
+    public void release(long position) {
+        if (position > head) {
+            head = position;
+            if (producerWaiting) {
+                LockSupport.unpark(producer);
+            }
+        }
+    }
+
+    /**
+     * Stops publishing tokens and waits for the lexer to finish the rest of the
+     * input, rethrowing its exception if it failed. This is used when parsing
+     * fails, as lexing the entire input first would have reported any lexer
+     * error instead.
+     */
+    public void finish() {
+        consumer = Thread.currentThread();
+        closed = true;
+        LockSupport.unpark(producer);
+        while (!done) {
+            consumerWaiting = true;
+            if (!done) {
+                LockSupport.park(this);
+            }
+            consumerWaiting = false;
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+}
@@ -1,6 +1,7 @@
 package plc.project;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -394,6 +395,20 @@ public final class AnalyzerTests {
         );
     }
 
+    @Test
+    public void testRecoveredSource() {
+        Parser parser = new Parser(new Lexer("DEF f() DO print(; print(1); END\nDEF main(): Integer DO RETURN 0; END").lex()).recovering();
+        Ast.Source ast = parser.parseSource();
+        Assertions.assertEquals(1, parser.getDiagnostics().size());
+        Analyzer analyzer = new Analyzer(new Scope(null));
+        analyzer.visit(ast);
+        Assertions.assertEquals(parser.getDiagnostics(), analyzer.getDiagnostics());
+        Ast.Method main = ast.getMethods().get(1);
+        Assertions.assertEquals(Environment.Type.INTEGER, main.getFunction().getReturnType());
+        Ast.Statement.Return statement = (Ast.Statement.Return) main.getStatements().get(0);
+        Assertions.assertEquals(Environment.Type.INTEGER, statement.getValue().getType());
+    }
+
     @ParameterizedTest(name = "{0}")
     @MethodSource
     public void testRequireAssignable(String test, Environment.Type target, Environment.Type type, boolean success) {
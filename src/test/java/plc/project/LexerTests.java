@@ -5,8 +5,18 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 public class LexerTests {
     @ParameterizedTest
@@ -360,6 +370,207 @@ public class LexerTests {
                 Arguments.of("Example 3", source, input));
     }
     @Test
+    void testTokenBuffer() {
+        String input = "LET x = -1.5;\nDEF f(a: Integer) DO print(\"a\\tb\", 'c'); END";
+        List<Token> expected = new Lexer(input).lex();
+        TokenBuffer buffer = new Lexer(input).lexBuffer();
+        Assertions.assertEquals(expected.size(), buffer.size());
+        for (int i = 0; i < buffer.size(); i++) {
+            Assertions.assertEquals(expected.get(i), buffer.get(i));
+            Assertions.assertTrue(buffer.literalEquals(i, expected.get(i).getLiteral()));
+        }
+    }
+    @Test
+    void testReader() {
+        String input = "LET x = -1.5;\nDEF f(a: Integer) DO print(\"a\\tb\", 'c'); END";
+        List<Token> expected = new Lexer(input).lex();
+        List<Token> actual = new ArrayList<>();
+        Lexer lexer = new Lexer(new StringReader(input));
+        while (lexer.hasNext()) {
+            actual.add(lexer.next());
+        }
+        Assertions.assertEquals(expected, actual);
+    }
+    @ParameterizedTest
+    @MethodSource
+    void testPath(String test, String input) throws IOException {
+        Path path = Files.createTempFile("lexer", ".plc");
+        try {
+            Files.write(path, input.getBytes(StandardCharsets.UTF_8));
+            Assertions.assertEquals(new Lexer(input).lex(), new Lexer(path).lex());
+            TokenBuffer buffer = new Lexer(path).lexBuffer();
+            Assertions.assertEquals(new Lexer(input).lex().get(0), buffer.get(0));
+        } finally {
+            Files.delete(path);
+        }
+    }
+    private static Stream<Arguments> testPath() {
+        return Stream.of(
+                Arguments.of("ASCII", "LET x = -1.5;\nDEF f(a: Integer) DO print(\"a\\tb\", 'c'); END"),
+                Arguments.of("Multibyte", "LET s = \"\u03c1\u00e9\"; print(s, '\u00e9');")
+        );
+    }
+    @Test
+    void testParallel() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            builder.append("LET x").append(i).append(" = -1.5 + \"a b\";\n");
+        }
+        String input = builder.toString();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Assertions.assertEquals(new Lexer(input).lex(), Lexer.lexParallel(input, pool));
+            List<Token> parallel = Lexer.lexParallel(input, pool, new SymbolTable());
+            Assertions.assertEquals(
+                    new Lexer(input, new SymbolTable()).lex().stream().map(Token::getSymbol).collect(Collectors.toList()),
+                    parallel.stream().map(Token::getSymbol).collect(Collectors.toList()));
+            ParseException exception = Assertions.assertThrows(ParseException.class,
+                    () -> Lexer.lexParallel(input + "\"unterminated", pool));
+            Assertions.assertEquals(input.length() + 13, exception.getIndex());
+        } finally {
+            pool.shutdown();
+        }
+    }
+    @ParameterizedTest
+    @MethodSource
+    void testRelex(String test, String input, int offset, int removed, String inserted) {
+        List<Token> previous = new Lexer(input).lex();
+        String edited = input.substring(0, offset) + inserted + input.substring(offset + removed);
+        Assertions.assertEquals(new Lexer(edited).lex(),
+                new Lexer(edited).relex(previous, offset, removed, inserted.length()));
+    }
+    private static Stream<Arguments> testRelex() {
+        String input = "LET x = 5;\nDEF f() DO\n    print(\"a b\");\nEND";
+        return Stream.of(
+                Arguments.of("Insert Token", input, 10, 0, "LET y = 1;"),
+                Arguments.of("Extend Identifier", input, 5, 0, "yz"),
+                Arguments.of("Join Tokens", input, 6, 1, ""),
+                Arguments.of("Split Number", input, 9, 0, " 6"),
+                Arguments.of("Open String", input, 27, 0, "\" + \""),
+                Arguments.of("Append", input, input.length(), 0, " x")
+        );
+    }
+    @Test
+    void testSlices() {
+        List<Token> tokens = new Lexer("x + 1.5").lex();
+        Token operator = tokens.get(1);
+        Assertions.assertTrue(operator.literalEquals("+"));
+        Assertions.assertEquals(1, operator.getLength());
+        Assertions.assertEquals("+", operator.getText().toString());
+        Assertions.assertSame(operator.getLiteral(), operator.getLiteral());
+        Assertions.assertEquals(new Token(Token.Type.DECIMAL, "1.5", 4), tokens.get(2));
+        Assertions.assertEquals(tokens.get(2), new Token(Token.Type.DECIMAL, "1.5", 4));
+    }
+    @Test
+    void testReset() {
+        Lexer lexer = new Lexer("LET x = 1;");
+        TokenBuffer buffer = lexer.lexBuffer();
+        for (String input : Arrays.asList("x.y(\"z\")", "", "DEF f() DO END")) {
+            Assertions.assertSame(buffer, lexer.reset(input).lexBuffer());
+            Assertions.assertEquals(new Lexer(input).lex(), tokens(buffer));
+        }
+        Assertions.assertEquals(new Lexer("LET").lex(), lexer.reset("LET").lex());
+        Assertions.assertSame(Lexer.pooled("a"), Lexer.pooled("b"));
+        Assertions.assertEquals(new Lexer("b + 1").lex(), Lexer.pooled("b + 1").lex());
+    }
+    private static List<Token> tokens(TokenBuffer buffer) {
+        List<Token> tokens = new ArrayList<>();
+        for (int i = 0; i < buffer.size(); i++) {
+            tokens.add(buffer.get(i));
+        }
+        return tokens;
+    }
+    @ParameterizedTest
+    @MethodSource
+    void testValue(String test, String input, Object expected) {
+        Token token = new Lexer(input).lexToken();
+        Assertions.assertEquals(expected, token.getValue());
+        Assertions.assertEquals(expected, new Token(token.getType(), input, 0).getValue());
+        Assertions.assertEquals(expected, new Lexer(input).lexBuffer().getValue(0));
+    }
+    private static Stream<Arguments> testValue() {
+        return Stream.of(
+                Arguments.of("Integer", "-123", new BigInteger("-123")),
+                Arguments.of("Large Integer", "123456789012345678901234567890", new BigInteger("123456789012345678901234567890")),
+                Arguments.of("Decimal", "+1.50", new BigDecimal("1.50")),
+                Arguments.of("Large Decimal", "1234567890.1234567890", new BigDecimal("1234567890.1234567890")),
+                Arguments.of("Character", "'c'", 'c'),
+                Arguments.of("Character Escape", "'\\''", '\''),
+                Arguments.of("String", "\"a b\"", "a b"),
+                Arguments.of("String Escapes", "\"a\\tb\\nc\\\\\"", "a\tb\nc\\"),
+                Arguments.of("Escaped Backslash", "\"\\\\n\"", "\\n"),
+                Arguments.of("Identifier", "name", null)
+        );
+    }
+    @Test
+    void testSymbols() {
+        List<Token> tokens = new Lexer("LET name = name + other; END").lex();
+        Assertions.assertEquals(SymbolTable.LET, tokens.get(0).getSymbol());
+        Assertions.assertEquals(SymbolTable.END, tokens.get(7).getSymbol());
+        Assertions.assertEquals(tokens.get(1).getSymbol(), tokens.get(3).getSymbol());
+        Assertions.assertTrue(tokens.get(1).getLiteral() == tokens.get(3).getLiteral());
+        Assertions.assertNotEquals(tokens.get(1).getSymbol(), tokens.get(5).getSymbol());
+        Assertions.assertEquals(SymbolTable.NONE, tokens.get(2).getSymbol());
+        Assertions.assertEquals(SymbolTable.DEF, new Token(Token.Type.IDENTIFIER, "DEF", 0).getSymbol());
+    }
+    @Test
+    void testKind() {
+        List<Token> tokens = new Lexer("a && (b != '+')").lex();
+        TokenBuffer buffer = new Lexer("a && (b != '+')").lexBuffer();
+        int[] kinds = {SymbolTable.NONE, '&' << 16 | '&', '(', SymbolTable.NONE, '!' << 16 | '=', SymbolTable.NONE, ')'};
+        for (int i = 0; i < kinds.length; i++) {
+            Assertions.assertEquals(kinds[i], tokens.get(i).getKind());
+            Assertions.assertEquals(kinds[i], buffer.getKind(i));
+        }
+    }
+    @ParameterizedTest
+    @MethodSource
+    void testErrorIndex(String test, String input, int index) {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Lexer(input).lex());
+        Assertions.assertEquals(index, exception.getIndex());
+    }
+    private static Stream<Arguments> testErrorIndex() {
+        return Stream.of(
+                Arguments.of("Leading Zero", "x = 01", 5),
+                Arguments.of("Leading Zeros", "-000.5", 2),
+                Arguments.of("Missing Decimal Digits", "1.", 2),
+                Arguments.of("Empty Character", "''", 1),
+                Arguments.of("Character Escape", "'\\x'", 1),
+                Arguments.of("Unterminated Character", "'ab'", 2),
+                Arguments.of("String Escape", "\"a\\x\"", 2),
+                Arguments.of("Unterminated String", "\"abc\n\"", 4),
+                Arguments.of("Invalid Character", "a \u000B", 2)
+        );
+    }
+    @ParameterizedTest
+    @MethodSource
+    void testBytes(String test, byte[] input, String expected) {
+        List<Token> tokens = new Lexer(input).lex();
+        Assertions.assertEquals(new Lexer(expected).lex(), tokens);
+        for (Token token : tokens) {
+            Assertions.assertEquals(expected.substring(token.getIndex(), token.getIndex() + token.getLength()),
+                    token.getLiteral());
+        }
+    }
+    private static Stream<Arguments> testBytes() {
+        String multibyte = "LET s = \"caf\u00E9 \u20AC\"; print('\u00FC', s);";
+        String supplementary = "x \uD83D\uDE00 \u00E9 y = \"\uD835\uDCB3\u00E9\uDBFF\uDFFF\";";
+        return Stream.of(
+                Arguments.of("ASCII", "LET x = 1.5 + y;".getBytes(StandardCharsets.UTF_8), "LET x = 1.5 + y;"),
+                Arguments.of("Multibyte", multibyte.getBytes(StandardCharsets.UTF_8), multibyte),
+                Arguments.of("Supplementary", "\"\uD83D\uDE00\" x".getBytes(StandardCharsets.UTF_8), "\"\uD83D\uDE00\" x"),
+                Arguments.of("Supplementary Operator", supplementary.getBytes(StandardCharsets.UTF_8), supplementary),
+                Arguments.of("Malformed", new byte[] {'"', (byte) 0xC3, '"'}, "\"\uFFFD\"")
+        );
+    }
+    @Test
+    void testBytesErrorIndex() {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Lexer("\"\u00E9\u00E9\n\"".getBytes(StandardCharsets.UTF_8)).lex());
+        Assertions.assertEquals(3, exception.getIndex());
+    }
+    @Test
     void testException() {
         ParseException exception = Assertions.assertThrows(ParseException.class,
                 () -> new Lexer("\"unterminated").lex());
@@ -223,6 +223,38 @@ final class ParserExpressionTests {
                                 new Ast.Expression.Access(Optional.empty(), "expr2")
                         )
                 ),
+                Arguments.of("Precedence",
+                        Arrays.asList(
+                                // a || b + c * d - e == f
+                                new Token(Token.Type.IDENTIFIER, "a", 0),
+                                new Token(Token.Type.OPERATOR, "||", 2),
+                                new Token(Token.Type.IDENTIFIER, "b", 5),
+                                new Token(Token.Type.OPERATOR, "+", 7),
+                                new Token(Token.Type.IDENTIFIER, "c", 9),
+                                new Token(Token.Type.OPERATOR, "*", 11),
+                                new Token(Token.Type.IDENTIFIER, "d", 13),
+                                new Token(Token.Type.OPERATOR, "-", 15),
+                                new Token(Token.Type.IDENTIFIER, "e", 17),
+                                new Token(Token.Type.OPERATOR, "==", 19),
+                                new Token(Token.Type.IDENTIFIER, "f", 22)
+                        ),
+                        new Ast.Expression.Binary("||",
+                                new Ast.Expression.Access(Optional.empty(), "a"),
+                                new Ast.Expression.Binary("==",
+                                        new Ast.Expression.Binary("-",
+                                                new Ast.Expression.Binary("+",
+                                                        new Ast.Expression.Access(Optional.empty(), "b"),
+                                                        new Ast.Expression.Binary("*",
+                                                                new Ast.Expression.Access(Optional.empty(), "c"),
+                                                                new Ast.Expression.Access(Optional.empty(), "d")
+                                                        )
+                                                ),
+                                                new Ast.Expression.Access(Optional.empty(), "e")
+                                        ),
+                                        new Ast.Expression.Access(Optional.empty(), "f")
+                                )
+                        )
+                ),
                 Arguments.of("Missing Operand",
                         Arrays.asList(
                                 // expr -
@@ -6,12 +6,17 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -518,6 +523,320 @@ final class ParserTests {
         test(input, expected, Parser::parseSource);
     }
 
+    @Test
+    void testTokenRing() {
+        String input = "LET x: Integer = 1;\nDEF main() DO\n    WHILE x != 10 DO\n        print(\"a\" + x);\n        x = x + 1;\n    END\nEND";
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(expected, new Parser(TokenRing.start(new Lexer(input), 4)).parseSource());
+    }
+
+    @Test
+    void testTokenRingLexerError() {
+        // The parse error at `?` is earlier, but lexing first would fail on the string.
+        String input = "LET x: Integer = ?;\nLET y: String = \"unterminated";
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(TokenRing.start(new Lexer(input), 4)).parseSource());
+        Assertions.assertEquals(input.length(), exception.getIndex());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParseParallel(String test, String declaration, int count) {
+        List<Token> tokens = new Lexer(declaration.repeat(count)).lex();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Ast.Source expected;
+            try {
+                expected = new Parser(tokens).parseSource();
+            } catch (ParseException e) {
+                ParseException exception = Assertions.assertThrows(ParseException.class,
+                        () -> Parser.parseParallel(tokens, pool));
+                Assertions.assertEquals(e.getMessage(), exception.getMessage());
+                Assertions.assertEquals(e.getIndex(), exception.getIndex());
+                return;
+            }
+            Assertions.assertEquals(expected, Parser.parseParallel(tokens, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Stream<Arguments> testParseParallel() {
+        return Stream.of(
+                Arguments.of("Fields and Methods", "LET x: Integer = 1;\nDEF f(a: Integer) DO\n    IF a > 1 DO\n        WHILE a != 0 DO a = a - 1; END\n    ELSE\n        FOR (i = 0; i < a; i = i + 1) print(i); END\n    END\nEND\n", 2000),
+                Arguments.of("Keyword as Expression", "DEF f() DO\n    IF a DO y = END; END\nEND\n", 3000),
+                Arguments.of("Parse Error", "DEF f() DO\n    x = 1 + ;\nEND\n", 3000),
+                Arguments.of("Missing Semicolon", "LET x: Integer = 1\n", 3000)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testLazy(String test, String input) {
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lex()).lazy().parseSource());
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lexBuffer()).lazy().parseSource());
+    }
+
+    private static Stream<Arguments> testLazy() {
+        return Stream.of(
+                Arguments.of("Nested Blocks", "DEF f(a: Integer) DO\n    IF a > 1 DO\n        WHILE a != 0 DO a = a - 1; END\n    ELSE\n        FOR (i = 0; i < a; i = i + 1) print(i); END\n    END\nEND\nLET x: Integer = 1;\nDEF g() DO RETURN x; END"),
+                Arguments.of("Keywords as Names", "DEF f() DO\n    LET IF: Integer;\n    y = END;\nEND\nDEF g() DO END"),
+                Arguments.of("Keywords in FOR Header", "DEF a() DO FOR (i = 0; END < 3; i = i + 1) x; END END\nDEF b() DO y; END"),
+                Arguments.of("Keywords in FOR Increment", "DEF a() DO FOR (x = 0; WHILE < (END); END = IF + 1) x; END END\nDEF b() DO y; END")
+        );
+    }
+
+    @Test
+    void testLazyException() {
+        String input = "DEF f() DO\n    x = 1 + ;\nEND\nDEF g() DO END";
+        ParseException expected = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(input).lex()).parseSource());
+        Ast.Source source = new Parser(new Lexer(input).lex()).lazy().parseSource();
+        Assertions.assertTrue(source.getMethods().get(0).toString().contains("statements=<unparsed>"));
+        Assertions.assertEquals(List.of(), source.getMethods().get(1).getStatements());
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> source.getMethods().get(0).getStatements());
+        Assertions.assertEquals(expected.getIndex(), exception.getIndex());
+    }
+
+    @Test
+    void testLazyConcurrent() {
+        String input = "DEF f() DO\n" + "    x = x + 1;\n".repeat(10000) + "END";
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        ForkJoinPool pool = new ForkJoinPool(8);
+        try {
+            for (int i = 0; i < 20; i++) {
+                Ast.Method method = new Parser(new Lexer(input).lex()).lazy().parseSource().getMethods().get(0);
+                List<List<Ast.Statement>> results = pool.submit(() -> Stream.generate(() -> method).limit(8)
+                        .parallel()
+                        .map(Ast.Method::getStatements)
+                        .collect(Collectors.toList())).join();
+                for (List<Ast.Statement> statements : results) {
+                    Assertions.assertSame(results.get(0), statements);
+                }
+                Assertions.assertEquals(expected.getMethods().get(0).getStatements(), results.get(0));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIterative(String test, String input) {
+        Ast.Source expected;
+        try {
+            expected = new Parser(new Lexer(input).lex()).parseSource();
+        } catch (ParseException e) {
+            ParseException exception = Assertions.assertThrows(ParseException.class,
+                    () -> new Parser(new Lexer(input).lex()).iterative().parseSource());
+            Assertions.assertEquals(e.getMessage(), exception.getMessage());
+            Assertions.assertEquals(e.getIndex(), exception.getIndex());
+            return;
+        }
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lex()).iterative().parseSource());
+    }
+
+    private static Stream<Arguments> testIterative() {
+        return Stream.of(
+                Arguments.of("Program", "LET x: Integer = 1;\nDEF main() DO\n    WHILE x != 10 DO\n        IF x > 5 DO print(\"a\" + x); ELSE x.f(1, g(2))[3]; END\n        x = x + 1 * (2 - obj.field);\n    END\n    FOR (i = 0; i < 5; i = i + 1) LET y = i; END\n    RETURN x;\nEND"),
+                Arguments.of("Missing Operand", "DEF main() DO\n    x = 1 + ;\nEND"),
+                Arguments.of("Trailing Comma", "DEF main() DO\n    f(1, );\nEND"),
+                Arguments.of("Missing END", "DEF main() DO\n    IF x DO\n        y;\n")
+        );
+    }
+
+    @Test
+    void testIterativeDepth() {
+        int depth = 100_000;
+        String input = "DEF main() DO\n" + "IF x DO ".repeat(depth) + "y = " + "(".repeat(depth) + "1" + ")".repeat(depth) + ";" + " END".repeat(depth) + "\nEND";
+        Ast.Statement statement = new Parser(new Lexer(input).lex()).iterative().parseSource().getMethods().get(0).getStatements().get(0);
+        for (int i = 0; i < depth; i++) {
+            statement = ((Ast.Statement.If) statement).getThenStatements().get(0);
+        }
+        Ast.Expression expression = ((Ast.Statement.Assignment) statement).getValue();
+        for (int i = 0; i < depth; i++) {
+            expression = ((Ast.Expression.Group) expression).getExpression();
+        }
+        Assertions.assertEquals(new Ast.Expression.Literal(BigInteger.ONE), expression);
+    }
+
+    @Test
+    void testIncremental() {
+        String input = "LET x: Integer = 1;\nDEF f() DO\n    x = 1;\nEND\nDEF g() DO\n    RETURN x;\nEND";
+        Lexer lexer = new Lexer(input);
+        List<Token> tokens = lexer.lex();
+        IncrementalParser parser = new IncrementalParser(tokens);
+        Ast.Source previous = parser.getSource();
+        Assertions.assertEquals(new Parser(tokens).parseSource(), previous);
+
+        int offset = input.indexOf("1;\nEND");
+        String edited = input.substring(0, offset) + "2 + 3" + input.substring(offset + 1);
+        tokens = new Lexer(edited, lexer.getSymbols()).relex(tokens, offset, 1, 5);
+        Ast.Source source = parser.reparse(tokens, offset, 1, 5);
+        Assertions.assertEquals(new Parser(tokens).parseSource(), source);
+        Assertions.assertSame(previous.getFields().get(0), source.getFields().get(0));
+        Assertions.assertNotSame(previous.getMethods().get(0), source.getMethods().get(0));
+        Assertions.assertSame(previous.getMethods().get(1), source.getMethods().get(1));
+    }
+
+    @Test
+    void testIncrementalException() {
+        IncrementalParser parser = new IncrementalParser(new Lexer("DEF f() DO\n    x = 1;\nEND\nDEF g() DO END").lex());
+        Ast.Source previous = parser.getSource();
+        List<Token> tokens = new Lexer("DEF f() DO\n    x = 1 + ;\nEND\nDEF g() DO END").lex();
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parseSource());
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> parser.reparse(tokens));
+        Assertions.assertEquals(expected.getIndex(), exception.getIndex());
+        Assertions.assertSame(previous, parser.getSource());
+        Ast.Source source = parser.reparse(new Lexer("DEF f() DO\n    x = 1 + 2;\nEND\nDEF g() DO END").lex());
+        Assertions.assertSame(previous.getMethods().get(1), source.getMethods().get(1));
+    }
+
+    @Test
+    void testIncrementalExceptionSpans() {
+        String input = "LET a: T = 1;\nLET b: T = 2;";
+        IncrementalParser parser = new IncrementalParser(new Lexer(input).lex());
+        Ast.Field field = parser.getSource().getFields().get(0);
+        Assertions.assertThrows(ParseException.class, () -> parser.reparse(new Lexer("  LET a: T = 1;\nLET b: T = ;").lex()));
+        Ast.Source source = parser.reparse(new Lexer(input).lex());
+        Assertions.assertSame(field, source.getFields().get(0));
+        Assertions.assertEquals(Ast.span(0, 13), field.getSpan());
+    }
+
+    @Test
+    void testRecovering() {
+        String input = "LET x: Integer = 1;\nLET y = 2;\nDEF f() DO\n    x = 1 + ;\n    IF x DO print(x); END\nEND\n"
+                + "DEF g() DO\n    WHILE x != DO x = x - 1; END\n    RETURN x;\nEND\nDEF h() DO\n    print(1);\nDEF main() DO\n    RETURN 0;\nEND";
+        Parser parser = new Parser(new Lexer(input).lex()).recovering();
+        Ast.Source source = parser.parseSource();
+        Assertions.assertEquals(
+                List.of(input.indexOf("= 2"), input.indexOf(";\n    IF"), input.indexOf("x = x - 1"), input.indexOf("main()")),
+                parser.getDiagnostics().stream().map(ParseException::getIndex).collect(Collectors.toList()));
+        Assertions.assertEquals(List.of("x"), source.getFields().stream().map(Ast.Field::getName).collect(Collectors.toList()));
+        Assertions.assertEquals(List.of("f", "g", "h", "main"), source.getMethods().stream().map(Ast.Method::getName).collect(Collectors.toList()));
+
+        List<Ast.Statement> statements = source.getMethods().get(0).getStatements();
+        Assertions.assertSame(parser.getDiagnostics().get(1), ((Ast.Statement.Error) statements.get(0)).getException());
+        Assertions.assertTrue(statements.get(1) instanceof Ast.Statement.If);
+        statements = source.getMethods().get(1).getStatements();
+        Assertions.assertTrue(statements.get(0) instanceof Ast.Statement.Error);
+        Assertions.assertEquals(new Parser(new Lexer("RETURN x;").lex()).parseStatement(), statements.get(1));
+        Assertions.assertEquals(new Parser(new Lexer("DEF h() DO print(1); END").lex()).parseMethod(), source.getMethods().get(2));
+        Assertions.assertEquals(new Parser(new Lexer("DEF main() DO RETURN 0; END").lex()).parseMethod(), source.getMethods().get(3));
+    }
+
+    @Test
+    void testRecoveringFirstDiagnostic() {
+        String input = "DEF f() DO DEF g = 1; END";
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(input).lex()).parseSource());
+        Parser parser = new Parser(new Lexer(input).lex()).recovering();
+        parser.parseSource();
+        Assertions.assertEquals(1, parser.getDiagnostics().size());
+        Assertions.assertEquals(expected.getMessage(), parser.getDiagnostics().get(0).getMessage());
+        Assertions.assertEquals(expected.getIndex(), parser.getDiagnostics().get(0).getIndex());
+    }
+
+    @Test
+    void testUnexpectedTopLevel() {
+        String input = "LET x: Integer = 1;\nx = 2;\nDEF main() DO RETURN x; END";
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(input).lex()).parseSource());
+        Assertions.assertEquals("Expected field or method.", expected.getMessage());
+        Assertions.assertEquals(input.indexOf("x = 2"), expected.getIndex());
+        Parser parser = new Parser(new Lexer(input).lex()).recovering();
+        Assertions.assertEquals(List.of("main"), parser.parseSource().getMethods().stream().map(Ast.Method::getName).collect(Collectors.toList()));
+        Assertions.assertEquals(expected.getIndex(), parser.getDiagnostics().get(0).getIndex());
+    }
+
+    @Test
+    void testRecoveringValid() {
+        String input = "LET x: Integer = 1;\nDEF main() DO\n    IF x > 1 DO print(x); ELSE x = 2; END\n    FOR (i = 0; i < 5; i = i + 1) print(i); END\nEND";
+        Parser parser = new Parser(new Lexer(input).lex()).recovering();
+        Assertions.assertEquals(new Parser(new Lexer(input).lex()).parseSource(), parser.parseSource());
+        Assertions.assertEquals(List.of(), parser.getDiagnostics());
+    }
+
+    @Test
+    void testSerialization() throws IOException {
+        String input = "LET a: Integer = 123456789012345678901234567890;\nLET CONST b: Decimal = -1.500;\nLET c: String = \"caf\u00e9\\n\";\n"
+                + "DEF main(x: Integer): Integer DO\n    LET y = 'c';\n    IF x > -9223372036854775808 DO print(NIL, TRUE); ELSE y = (FALSE); END\n"
+                + "    FOR (i = 0; i < 5; i = i + 1) obj.f(i)[x]; END\n    WHILE x != 0 DO x = x - 1; END\n    RETURN a.b;\n    x = 1 + ;\nEND";
+        Ast.Source source = new Parser(new Lexer(input).lex()).recovering().parseSource();
+        Assertions.assertEquals(source, AstReader.read(AstWriter.write(source)));
+
+        Path path = Files.createTempFile("ast", ".bin");
+        try {
+            Files.write(path, AstWriter.write(source));
+            Assertions.assertEquals(source, AstReader.read(path));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    void testSerializationDepth() {
+        int depth = 100_000;
+        String input = "DEF main() DO\n" + "IF x DO ".repeat(depth) + "y = " + "(".repeat(depth) + "1" + ")".repeat(depth) + ";" + " END".repeat(depth) + "\nEND";
+        Ast.Source source = new Parser(new Lexer(input).lex()).iterative().parseSource();
+        Ast.Source read = AstReader.read(AstWriter.write(source));
+        Ast.Statement expected = source.getMethods().get(0).getStatements().get(0);
+        Ast.Statement statement = read.getMethods().get(0).getStatements().get(0);
+        for (int i = 0; i < depth; i++) {
+            Assertions.assertEquals(expected.getSpan(), statement.getSpan());
+            Assertions.assertEquals(((Ast.Statement.If) expected).getCondition(), ((Ast.Statement.If) statement).getCondition());
+            expected = ((Ast.Statement.If) expected).getThenStatements().get(0);
+            statement = ((Ast.Statement.If) statement).getThenStatements().get(0);
+        }
+        Ast.Expression expression = ((Ast.Statement.Assignment) statement).getValue();
+        Ast.Expression expectedExpression = ((Ast.Statement.Assignment) expected).getValue();
+        for (int i = 0; i < depth; i++) {
+            Assertions.assertEquals(expectedExpression.getSpan(), expression.getSpan());
+            expression = ((Ast.Expression.Group) expression).getExpression();
+            expectedExpression = ((Ast.Expression.Group) expectedExpression).getExpression();
+        }
+        Assertions.assertEquals(expectedExpression, expression);
+    }
+
+    @Test
+    void testSpans() {
+        String input = "LET x: Integer = 1;\nDEF main() DO\n    IF x > 1 DO print(x.y(2)); END\n    RETURN (x + 1) * 2;\nEND\n";
+        for (Parser parser : List.of(new Parser(new Lexer(input).lex()), new Parser(new Lexer(input).lex()).iterative())) {
+            Ast.Source source = parser.parseSource();
+            Assertions.assertEquals(input.trim(), span(input, source));
+            Assertions.assertEquals("LET x: Integer = 1;", span(input, source.getFields().get(0)));
+            Assertions.assertEquals("1", span(input, source.getFields().get(0).getValue().get()));
+            Ast.Method method = source.getMethods().get(0);
+            Assertions.assertEquals(input.substring(input.indexOf("DEF")).trim(), span(input, method));
+            Ast.Statement.If statement = (Ast.Statement.If) method.getStatements().get(0);
+            Assertions.assertEquals("IF x > 1 DO print(x.y(2)); END", span(input, statement));
+            Assertions.assertEquals("x > 1", span(input, statement.getCondition()));
+            Ast.Expression.Function function = (Ast.Expression.Function) ((Ast.Statement.Expression) statement.getThenStatements().get(0)).getExpression();
+            Assertions.assertEquals("print(x.y(2))", span(input, function));
+            Assertions.assertEquals("x.y(2)", span(input, function.getArguments().get(0)));
+            Ast.Expression.Binary binary = (Ast.Expression.Binary) ((Ast.Statement.Return) method.getStatements().get(1)).getValue();
+            Assertions.assertEquals("(x + 1) * 2", span(input, binary));
+            Assertions.assertEquals("(x + 1)", span(input, binary.getLeft()));
+        }
+
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSource();
+        Ast.Source read = AstReader.read(AstWriter.write(source));
+        Assertions.assertEquals(source.getSpan(), read.getSpan());
+        Assertions.assertEquals(source.getMethods().get(0).getStatements().get(1).getSpan(), read.getMethods().get(0).getStatements().get(1).getSpan());
+
+        Lexer lexer = new Lexer(input);
+        List<Token> tokens = lexer.lex();
+        IncrementalParser parser = new IncrementalParser(tokens);
+        String edited = "LET w: Integer = 0;\n" + input;
+        tokens = new Lexer(edited, lexer.getSymbols()).relex(tokens, 0, 0, 20);
+        Ast.Method method = parser.reparse(tokens, 0, 0, 20).getMethods().get(0);
+        Assertions.assertEquals("RETURN (x + 1) * 2;", span(edited, method.getStatements().get(1)));
+    }
+
+    private static String span(String input, Ast ast) {
+        return input.substring(Ast.getStart(ast.getSpan()), Ast.getEnd(ast.getSpan()));
+    }
+
     /**
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).